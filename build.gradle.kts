@@ -1,5 +1,6 @@
 plugins {
     id("com.gradleup.shadow") version "9.0.0-beta4"
+    id("me.champeau.jmh") version "0.7.2"
     application
 }
 
@@ -41,6 +42,10 @@ dependencies {
     }
     implementation("org.ow2.asm:asm:9.7.1")
     implementation("org.ow2.asm:asm-commons:9.7.1")
+
+    testImplementation(platform("org.junit:junit-bom:5.11.4"))
+    testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
 }
 
 java {
@@ -62,8 +67,38 @@ tasks.withType<JavaCompile> {
     options.compilerArgs.addAll(modules)
 }
 
+tasks.test {
+    useJUnitPlatform()
+    jvmArgs(modules)
+}
+
 application {
     mainClass.set("dev.minidigger.apidiff.Main")
     applicationDefaultJvmArgs = modules
 }
 
+jmh {
+    includes.addAll(providers.gradleProperty("jmh.includes").map { listOf(it) }.orElse(emptyList()))
+    // allocation rate next to the throughput, so allocation regressions show up too
+    profilers.add("gc")
+}
+
+tasks.named<JavaExec>("run") {
+    // forward -Dapidiff.* options from the gradle invocation to the application
+    systemProperties(providers.systemPropertiesPrefixedBy("apidiff.").get())
+}
+
+tasks.register<JavaExec>("pipelineBenchmark") {
+    description = "Runs the whole pipeline offline against local stand-ins of the Paper services"
+    group = "benchmark"
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("dev.minidigger.apidiff.PipelineBenchmark")
+    jvmArgs(modules)
+    systemProperties(providers.systemPropertiesPrefixedBy("apidiff.").get())
+    // main works relative to its working directory, keep it away from the real output and caches
+    val dir = layout.buildDirectory.dir("pipeline-benchmark").get().asFile
+    workingDir = dir
+    doFirst { dir.mkdirs() }
+    args(file("src/jmh/fixtures/sources").absolutePath)
+    providers.gradleProperty("warm").orNull?.let { args("--warm") }
+}
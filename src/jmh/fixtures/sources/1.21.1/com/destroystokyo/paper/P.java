@@ -0,0 +1 @@
+package com.destroystokyo.paper; public class P { public void p() {} }
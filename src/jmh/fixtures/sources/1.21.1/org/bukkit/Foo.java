@@ -0,0 +1,7 @@
+package org.bukkit;
+public class Foo {
+    public int x;
+    public void bar(int a) {}
+    public String toString() { return ""; }
+    public static class Inner { public void baz() {} }
+}
@@ -0,0 +1,2 @@
+package org.bukkit;
+public class Gone { public void g() {} }
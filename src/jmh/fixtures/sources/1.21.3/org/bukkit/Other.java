@@ -0,0 +1,2 @@
+package org.bukkit;
+public class Other { public String toString() { return ""; } }
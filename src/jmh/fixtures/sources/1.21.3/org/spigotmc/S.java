@@ -0,0 +1 @@
+package org.spigotmc; public class S { public int s; }
@@ -0,0 +1 @@
+package io.papermc.paper; public interface N { void n(); }
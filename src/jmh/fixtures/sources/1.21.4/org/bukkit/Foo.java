@@ -0,0 +1,9 @@
+package org.bukkit;
+public class Foo {
+    
+    public void bar(int a) {}
+    public void bar(String a) {}
+    public String toString() { return ""; }
+    @Deprecated public void added() {}
+    public static class Inner { public void baz() {} }
+}
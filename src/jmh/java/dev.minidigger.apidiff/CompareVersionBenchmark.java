@@ -0,0 +1,51 @@
+package dev.minidigger.apidiff;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sorts the file names of the index the way generateIndex does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompareVersionBenchmark {
+
+    private final List<String> names = new ArrayList<>();
+
+    @Setup
+    public void setup() {
+        // roughly the raw files of every Paper release since 1.8
+        for (int minor = 8; minor <= 21; minor++) {
+            for (int patch = 0; patch <= 10; patch++) {
+                names.add("paper-api-1." + minor + "." + patch + ".json");
+                names.add("paper-api-diff-1." + minor + "." + patch + "-1." + minor + "." + (patch + 1) + ".json");
+            }
+        }
+        Collections.shuffle(names, new Random(42));
+    }
+
+    @Benchmark
+    public List<String> sort() {
+        List<String> sorted = new ArrayList<>(names);
+        sorted.sort(HtmlGenerator::compareVersionAware);
+        return sorted;
+    }
+}
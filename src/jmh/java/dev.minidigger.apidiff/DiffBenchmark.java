@@ -0,0 +1,32 @@
+package dev.minidigger.apidiff;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Diffs two already loaded exports, so only the comparison itself is measured.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DiffBenchmark {
+
+    @Benchmark
+    public ApiDiffer.ApiDiff adjacent(Workspace workspace) {
+        return workspace.apiDiffer.compute(workspace.versions.get(0), workspace.versions.get(1));
+    }
+
+    @Benchmark
+    public ApiDiffer.ApiDiff identical(Workspace workspace) {
+        return workspace.apiDiffer.compute(workspace.versions.get(1), workspace.versions.get(1));
+    }
+}
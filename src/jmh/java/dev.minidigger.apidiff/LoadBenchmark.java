@@ -0,0 +1,61 @@
+package dev.minidigger.apidiff;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the streaming json loader with the old gson tree + parse path.
+ * Run with {@code ./gradlew jmh -Pjmh.includes=LoadBenchmark} and the gc profiler to see the allocation difference.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+// the tree path holds the whole 100x document and its export at once
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class LoadBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int scale;
+
+    private final VersionInfo version = new VersionInfo("1.21.4", 0, "STABLE");
+    private final ApiDiffer apiDiffer = new ApiDiffer();
+    private Path json;
+
+    @Setup
+    public void setup() throws IOException {
+        json = Files.createTempFile("paper-api-", ".json");
+        SyntheticExport.write(json, version, scale);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(json);
+    }
+
+    @Benchmark
+    public ApiDiffer.ApiExport streaming() throws IOException {
+        return apiDiffer.readJson(version, json);
+    }
+
+    @Benchmark
+    public ApiDiffer.ApiExport tree() throws IOException {
+        return apiDiffer.readJsonTree(version, json);
+    }
+}
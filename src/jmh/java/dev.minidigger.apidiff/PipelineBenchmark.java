@@ -0,0 +1,146 @@
+package dev.minidigger.apidiff;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Runs the whole {@link Main} pipeline against a local stand-in for the Paper graphql api and maven repository,
+ * so it can be timed without network access. Every directory below the fixture directory is one version,
+ * served as a sources jar. Main prints the wall time, cpu time and peak rss of every stage at the end.
+ * <p>
+ * Run with {@code ./gradlew pipelineBenchmark}, it works in {@code build/pipeline-benchmark}.
+ * Pass {@code --warm} to keep the caches of the previous run and measure an incremental run instead.
+ */
+public final class PipelineBenchmark {
+
+    private PipelineBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path fixtures = Path.of(args[0]);
+        boolean warm = List.of(args).contains("--warm");
+        if (!warm) {
+            for (String dir : List.of("cache", "output", "sources")) {
+                delete(Path.of(dir));
+            }
+        }
+
+        Map<String, byte[]> jars = new TreeMap<>(HtmlGenerator::compareVersionAware);
+        try (Stream<Path> versions = Files.list(fixtures)) {
+            for (Path version : versions.filter(Files::isDirectory).toList()) {
+                jars.put(version.getFileName().toString(), jar(version));
+            }
+        }
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/graphql", exchange -> send(exchange, "application/json", graphql(jars.keySet()).getBytes(StandardCharsets.UTF_8)));
+        server.createContext("/repo/", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            // .../paper-api/<version>-R0.1-SNAPSHOT/<file>
+            String[] segments = path.split("/");
+            String version = segments[segments.length - 2].replace("-R0.1-SNAPSHOT", "");
+            if (path.endsWith("/maven-metadata.xml") && jars.containsKey(version)) {
+                send(exchange, "application/xml", metadata(version).getBytes(StandardCharsets.UTF_8));
+            } else if (path.endsWith("-sources.jar") && jars.containsKey(version)) {
+                send(exchange, "application/java-archive", jars.get(version));
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+            }
+        });
+        server.start();
+
+        String base = "http://localhost:" + server.getAddress().getPort();
+        System.setProperty("apidiff.graphqlUrl", base + "/graphql");
+        System.setProperty("apidiff.repoUrl", base + "/repo/");
+        try {
+            long start = System.nanoTime();
+            Main.main(new String[0]);
+            System.out.println("Pipeline over " + jars.size() + " versions took " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static String graphql(Iterable<String> versions) {
+        StringBuilder nodes = new StringBuilder();
+        // the real api starts with 1.7.10 and 1.8.8, which Main skips
+        for (String skipped : List.of("1.7.10", "1.8.8")) {
+            nodes.append(node(skipped)).append(",");
+        }
+        for (String version : versions) {
+            nodes.append(node(version)).append(",");
+        }
+        nodes.setLength(nodes.length() - 1);
+        return "{\"data\":{\"project\":{\"versions\":{\"nodes\":[" + nodes + "]}}}}";
+    }
+
+    private static String node(String version) {
+        String family = Stream.of(version.split("\\.")).limit(2).collect(Collectors.joining("."));
+        return "{\"family\":{\"key\":\"" + family + "\"},\"key\":\"" + version + "\",\"builds\":{\"nodes\":[{\"number\":1,\"channel\":\"STABLE\"}]}}";
+    }
+
+    private static String metadata(String version) {
+        return """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <metadata>
+                  <versioning>
+                    <snapshotVersions>
+                      <snapshotVersion>
+                        <classifier>sources</classifier>
+                        <extension>jar</extension>
+                        <value>%s-R0.1-20250101.000000-1</value>
+                      </snapshotVersion>
+                    </snapshotVersions>
+                  </versioning>
+                </metadata>
+                """.formatted(version);
+    }
+
+    private static byte[] jar(Path dir) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes); Stream<Path> walk = Files.walk(dir)) {
+            for (Path file : walk.filter(Files::isRegularFile).sorted().toList()) {
+                out.putNextEntry(new ZipEntry(dir.relativize(file).toString().replace('\\', '/')));
+                Files.copy(file, out);
+                out.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void send(HttpExchange exchange, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void delete(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> walk = Files.walk(dir)) {
+            for (Path path : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package dev.minidigger.apidiff;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders the since and diff pages into a writer that drops everything, so only rendering and escaping are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderBenchmark {
+
+    private HtmlGenerator htmlGenerator;
+    private SinceGenerator.SinceReport sinceReport;
+    private ApiDiffer.ApiDiff diff;
+
+    @Setup
+    public void setup(Workspace workspace) throws Exception {
+        htmlGenerator = new HtmlGenerator(workspace.apiDiffer, workspace.dir.resolve("output"));
+        sinceReport = new SinceGenerator(workspace.versions, workspace.apiDiffer, workspace.dir.resolve("since.json")).generate();
+        diff = workspace.apiDiffer.compute(workspace.versions.get(0), workspace.versions.get(1));
+    }
+
+    @Benchmark
+    public void since(Workspace workspace) throws IOException {
+        htmlGenerator.writeSince(workspace.versions, sinceReport, Writer.nullWriter());
+    }
+
+    @Benchmark
+    public void diff() throws IOException {
+        htmlGenerator.writeDiff(diff, Writer.nullWriter());
+    }
+}
@@ -0,0 +1,27 @@
+package dev.minidigger.apidiff;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the presence index and the since report over all versions of the workspace, including writing since.json.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SinceBenchmark {
+
+    @Benchmark
+    public SinceGenerator.SinceReport generate(Workspace workspace) throws Exception {
+        return new SinceGenerator(workspace.versions, workspace.apiDiffer, workspace.dir.resolve("since.json")).generate();
+    }
+}
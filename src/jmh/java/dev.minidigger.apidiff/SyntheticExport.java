@@ -0,0 +1,92 @@
+package dev.minidigger.apidiff;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes a made up raw api export in the doclet's layout. At scale 1 it is roughly the size of the Paper API.
+ * Later revisions of the same scale add a package, drop some classes and add members to others,
+ * like consecutive Paper releases do.
+ */
+public final class SyntheticExport {
+
+    private static final int PACKAGES = 180;
+    private static final int CLASSES_PER_PACKAGE = 20;
+    private static final int MEMBERS_PER_CLASS = 12;
+
+    private SyntheticExport() {
+    }
+
+    public static void write(Path file, VersionInfo version, int scale) throws IOException {
+        write(file, version, scale, 0);
+    }
+
+    public static void write(Path file, VersionInfo version, int scale, int revision) throws IOException {
+        String base = "https://jd.papermc.io/paper/" + version.name() + "/";
+        try (Writer writer = Files.newBufferedWriter(file); JsonWriter out = new JsonWriter(writer)) {
+            out.setIndent("  ");
+            out.beginArray();
+            for (int p = 0; p < PACKAGES * scale + revision; p++) {
+                String packageName = "org.bukkit.synthetic" + p;
+                out.beginObject();
+                out.name("kind").value("PACKAGE");
+                out.name("name").value(packageName);
+                out.name("link").value(base + packageName.replace('.', '/') + "/package-summary.html");
+                out.name("children").beginArray();
+                for (int c = 0; c < CLASSES_PER_PACKAGE; c++) {
+                    int index = p * CLASSES_PER_PACKAGE + c;
+                    if (revision > 0 && index % 101 == revision) {
+                        continue;
+                    }
+                    writeClass(out, base, packageName + ".Type" + c, c, true, revision > 0 && index % 53 == revision ? revision : 0);
+                }
+                out.endArray();
+                out.endObject();
+            }
+            out.endArray();
+        }
+    }
+
+    private static void writeClass(JsonWriter out, String base, String className, int seed, boolean withInner, int addedIn) throws IOException {
+        String classLink = base + className.replace('.', '/') + ".html";
+        out.beginObject();
+        out.name("kind").value(seed % 5 == 0 ? "INTERFACE" : "CLASS");
+        out.name("name").value(className);
+        out.name("link").value(classLink);
+        if (seed % 7 == 0) {
+            out.name("apiStatus").value("Experimental");
+        }
+        out.name("children").beginArray();
+        if (withInner) {
+            writeClass(out, base, className + ".Builder", seed + 1, false, 0);
+        }
+        if (addedIn > 0) {
+            String name = "addedIn" + addedIn + "()";
+            out.beginObject();
+            out.name("kind").value("METHOD");
+            out.name("name").value(name);
+            out.name("link").value(classLink + "#" + name);
+            out.endObject();
+        }
+        for (int m = 0; m < MEMBERS_PER_CLASS; m++) {
+            String name = m % 4 == 0 ? "FIELD_" + m : "method" + m + "(int,String)";
+            out.beginObject();
+            out.name("kind").value(m % 4 == 0 ? "FIELD" : "METHOD");
+            out.name("name").value(name);
+            out.name("link").value(classLink + "#" + name);
+            if ((seed + m) % 11 == 0) {
+                out.name("deprecated").beginObject()
+                        .name("forRemoval").value("true")
+                        .name("deprecated").value("true")
+                        .endObject();
+            }
+            out.endObject();
+        }
+        out.endArray();
+        out.endObject();
+    }
+}
@@ -0,0 +1,67 @@
+package dev.minidigger.apidiff;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Three consecutive versions in a temporary directory, either the checked in fixture exports
+ * or synthetic ones at 1x or 10x the size of the Paper API. Three loaded exports at 100x don't fit a default heap,
+ * that scale is only covered by {@link LoadBenchmark}.
+ */
+@State(Scope.Benchmark)
+public class Workspace {
+
+    @Param({"fixture", "1", "10"})
+    public String input;
+
+    public final List<VersionInfo> versions = List.of(
+            new VersionInfo("1.0", 0, "STABLE"),
+            new VersionInfo("1.1", 0, "STABLE"),
+            new VersionInfo("1.2", 0, "STABLE"));
+
+    public Path dir;
+    public ApiDiffer apiDiffer;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("apidiff-benchmark");
+        Path raw = Files.createDirectories(dir.resolve("output/raw"));
+        for (int i = 0; i < versions.size(); i++) {
+            VersionInfo version = versions.get(i);
+            Path json = raw.resolve("paper-api-" + version.name() + ".json");
+            if (input.equals("fixture")) {
+                try (InputStream in = Workspace.class.getResourceAsStream("/fixtures/paper-api-" + version.name() + ".json")) {
+                    Files.copy(in, json);
+                }
+            } else {
+                SyntheticExport.write(json, version, Integer.parseInt(input), i);
+            }
+        }
+        apiDiffer = new ApiDiffer(raw, dir.resolve("cache/exports"));
+        // the first load writes the binary cache, every benchmark after that reads it
+        for (VersionInfo version : versions) {
+            apiDiffer.load(version);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> walk = Files.walk(dir)) {
+            for (Path path : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package dev.minidigger.apidiff;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Custom flight recorder events of a run, record them with e.g. {@code -XX:StartFlightRecording=filename=apidiff.jfr}.
+ */
+final class ApiDiffEvents {
+
+    private ApiDiffEvents() {
+    }
+
+    @Name("dev.minidigger.apidiff.Fetch")
+    @Label("Fetch Sources")
+    @Category("ApiDiff")
+    static class Fetch extends Event {
+        @Label("Version")
+        String version;
+        @Label("Downloaded")
+        @DataAmount
+        long downloaded;
+    }
+
+    @Name("dev.minidigger.apidiff.Export")
+    @Label("Api Export")
+    @Category("ApiDiff")
+    static class Export extends Event {
+        @Label("Version")
+        String version;
+        @Label("Up To Date")
+        boolean upToDate;
+        @Label("Written")
+        @DataAmount
+        long written;
+    }
+
+    @Name("dev.minidigger.apidiff.Load")
+    @Label("Load Export")
+    @Category("ApiDiff")
+    static class Load extends Event {
+        @Label("Version")
+        String version;
+        @Label("From Binary Cache")
+        boolean binary;
+        @Label("Packages")
+        int packages;
+        @Label("Classes")
+        int classes;
+        @Label("Members")
+        int members;
+    }
+
+    @Name("dev.minidigger.apidiff.Diff")
+    @Label("Diff")
+    @Category("ApiDiff")
+    static class Diff extends Event {
+        @Label("Version A")
+        String versionA;
+        @Label("Version B")
+        String versionB;
+        @Label("Classes Added")
+        int classesAdded;
+        @Label("Classes Removed")
+        int classesRemoved;
+        @Label("Classes Changed")
+        int classesChanged;
+    }
+
+    @Name("dev.minidigger.apidiff.Since")
+    @Label("Since Report")
+    @Category("ApiDiff")
+    static class Since extends Event {
+        @Label("Versions")
+        int versions;
+        @Label("Members")
+        int members;
+    }
+
+    /**
+     * An instant event once a page is on disk, the time spent rendering is the render stage.
+     */
+    @Name("dev.minidigger.apidiff.Render")
+    @Label("Render Page")
+    @Category("ApiDiff")
+    static class Render extends Event {
+        @Label("Page")
+        String page;
+        @Label("Written")
+        @DataAmount
+        long written;
+    }
+}
@@ -1,30 +1,80 @@
 package dev.minidigger.apidiff;
 
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.annotations.Expose;
+import com.google.gson.stream.JsonReader;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+import org.jspecify.annotations.Nullable;
 
 import javax.lang.model.element.ElementKind;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+/**
+ * Loads api exports and diffs them. Safe to use from multiple threads.
+ */
 public class ApiDiffer {
 
+    // adjacent diffs and the since pass only need a sliding window of two exports
+    static final int MAX_LOADED_EXPORTS = Integer.getInteger("apidiff.maxLoadedExports", 8);
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
     private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
 
-    public final Map<String, ApiExport> exports = new LinkedHashMap<>();
-    public final Map<String, ApiDiff> diffs = new LinkedHashMap<>();
+    public final SymbolTable symbols = new SymbolTable();
+    public final LruCache<String, ApiExport> exports = new LruCache<>(MAX_LOADED_EXPORTS);
+    // computed diffs waiting for their page, HtmlGenerator.generateDiff takes them out again,
+    // so they don't keep evicted exports reachable
+    public final Map<String, ApiDiff> diffs = new ConcurrentSkipListMap<>(HtmlGenerator::compareVersionAware);
+
+    private final Path raw;
+    private final Path binaryCache;
+
+    public ApiDiffer() {
+        this(Path.of("output/raw"), Path.of("cache/exports"));
+    }
+
+    /**
+     * @param raw         directory of the raw json exports
+     * @param binaryCache directory of the binary copies of the exports
+     */
+    public ApiDiffer(Path raw, Path binaryCache) {
+        this.raw = raw;
+        this.binaryCache = binaryCache;
+    }
 
-    @SuppressWarnings("unchecked")
     public ApiExport load(VersionInfo version) {
         return exports.computeIfAbsent(version.name(), v -> {
+            ApiDiffEvents.Load event = new ApiDiffEvents.Load();
+            event.begin();
+            long start = System.nanoTime();
             try {
-                List<Map<String, Object>> input = gson.fromJson(Files.readString(Path.of("output/raw/paper-api-" + version.name() + ".json")), ArrayList.class);
-                ApiExport export = new ApiExport(version, new LinkedHashMap<>(), new LinkedHashMap<>(), new LinkedHashMap<>());
-                parse(input, export, null);
+                ApiExport export = load(version, event);
+                event.version = version.name();
+                event.packages = export.packages.size();
+                event.classes = export.classes.size();
+                event.members = export.members.size();
+                event.commit();
+
+                Metrics.VersionMetrics metrics = Metrics.version(version.name());
+                metrics.loads.incrementAndGet();
+                metrics.loadMillis.addAndGet(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                metrics.packages = event.packages;
+                metrics.classes = event.classes;
+                metrics.members = event.members;
                 return export;
             } catch (IOException e) {
                 throw new RuntimeException(e);
@@ -32,11 +82,66 @@ public class ApiDiffer {
         });
     }
 
+    private ApiExport load(VersionInfo version, ApiDiffEvents.Load event) throws IOException {
+        Path json = raw.resolve("paper-api-" + version.name() + ".json");
+        Path binary = binaryCache.resolve("paper-api-" + version.name() + ".bin");
+        if (ApiExportCodec.isUpToDate(binary, json)) {
+            try {
+                ApiExport export = ApiExportCodec.read(version, binary, symbols);
+                event.binary = true;
+                return export;
+            } catch (IOException | RuntimeException e) {
+                // an older format version or a truncated file, the json is still there to rebuild it from
+                System.err.println("Ignoring binary export " + binary + ": " + e);
+            }
+        }
+
+        ApiExport export = readJson(version, json);
+        // the json stays the published raw data, the binary copy only speeds up the next load
+        ApiExportCodec.write(export, binary);
+        return export;
+    }
+
     public void diff(VersionInfo versionA, VersionInfo versionB, Path output) throws Exception {
+        ApiDiff diff = compute(versionA, versionB);
+        diffs.put(versionA.name() + "-" + versionB.name(), diff);
+
+        // poor mans type adapter
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("versionA", versionA.name());
+        result.put("versionB", versionB.name());
+        result.put("packagesAdded", diff.packagesAdded.stream().map(Package::name).toList());
+        result.put("packagesRemoved", diff.packagesRemoved.stream().map(Package::name).toList());
+        result.put("packagesChanged", diff.packagesChanged.stream().map(Package::name).toList());
+        result.put("classesAdded", diff.classesAdded.stream().map(Class::name).toList());
+        result.put("classesRemoved", diff.classesRemoved.stream().map(Class::name).toList());
+        result.put("classesChanged", diff.classesChanged.stream().map(Class::name).toList());
+        result.put("membersAdded", diff.membersAdded.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().stream().map(Member::name).toList())));
+        result.put("membersRemoved", diff.membersRemoved.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().stream().map(Member::name).toList())));
+        result.put("membersChanged", diff.membersChanged.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().stream().map(Member::name).toList())));
+        Files.writeString(output, gson.toJson(result));
+    }
+
+    /**
+     * Diffs any two versions without keeping or writing the result.
+     */
+    public ApiDiff compute(VersionInfo versionA, VersionInfo versionB) {
         // read the two api exports
         ApiExport a = load(versionA);
         ApiExport b = load(versionB);
 
+        ApiDiffEvents.Diff event = new ApiDiffEvents.Diff();
+        event.begin();
+        long start = System.nanoTime();
+
+        // shard by package and compare the shards on the common fork join pool,
+        // the names are sorted so merging the shards in order gives the same result every run
+        Set<String> packageNames = new TreeSet<>(a.packages.keySet());
+        packageNames.addAll(b.packages.keySet());
+        List<DiffShard> shards = packageNames.parallelStream()
+                .map(name -> diffPackage(a.packages.get(name), b.packages.get(name), a, b))
+                .toList();
+
         List<Package> packagesAdded = new ArrayList<>();
         List<Package> packagesRemoved = new ArrayList<>();
         List<Package> packagesChanged = new ArrayList<>();
@@ -45,90 +150,140 @@ public class ApiDiffer {
         List<Class> classesRemoved = new ArrayList<>();
         List<Class> classesChanged = new ArrayList<>();
 
+        Map<String, List<Member>> membersAdded = new LinkedHashMap<>();
+        Map<String, List<Member>> membersRemoved = new LinkedHashMap<>();
+        Map<String, List<Member>> membersChanged = new LinkedHashMap<>();
+
+        for (DiffShard shard : shards) {
+            packagesAdded.addAll(shard.packagesAdded);
+            packagesRemoved.addAll(shard.packagesRemoved);
+            packagesChanged.addAll(shard.packagesChanged);
+            classesAdded.addAll(shard.classesAdded);
+            classesRemoved.addAll(shard.classesRemoved);
+            classesChanged.addAll(shard.classesChanged);
+            // a class only ever lives in one package, so the shards never share a key
+            membersAdded.putAll(shard.membersAdded);
+            membersRemoved.putAll(shard.membersRemoved);
+            membersChanged.putAll(shard.membersChanged);
+        }
+
+        ApiDiff diff = new ApiDiff(
+                versionA,
+                versionB,
+                packagesAdded,
+                packagesRemoved,
+                packagesChanged,
+                classesAdded,
+                classesRemoved,
+                classesChanged,
+                membersAdded,
+                membersRemoved,
+                membersChanged
+        );
+
+        Metrics.diff(versionA.name(), versionB.name(), System.nanoTime() - start, diff);
+        event.versionA = versionA.name();
+        event.versionB = versionB.name();
+        event.classesAdded = classesAdded.size();
+        event.classesRemoved = classesRemoved.size();
+        event.classesChanged = classesChanged.size();
+        event.commit();
+        return diff;
+    }
+
+    /**
+     * Compares a single package, either side is null if the package only exists in the other export.
+     * Subtrees with equal structural hashes are skipped, so the work grows with the changes, not the api.
+     */
+    private DiffShard diffPackage(@Nullable Package aPackage, @Nullable Package bPackage, ApiExport a, ApiExport b) {
+        DiffShard shard = new DiffShard();
         List<Member> membersAdded = new ArrayList<>();
         List<Member> membersRemoved = new ArrayList<>();
         List<Member> membersChanged = new ArrayList<>();
 
-        // compare packages
-        for (Map.Entry<String, Package> entry : b.packages.entrySet()) {
-            Package aPackage = a.packages.get(entry.getKey());
-            if (aPackage == null) {
-                packagesAdded.add(entry.getValue());
-            } else {
-                if (!entry.getValue().classes().equals(aPackage.classes())) {
-                    packagesChanged.add(entry.getValue());
-                }
-            }
-        }
-        for (Map.Entry<String, Package> entry : a.packages.entrySet()) {
-            if (!b.packages.containsKey(entry.getKey())) {
-                packagesRemoved.add(entry.getValue());
-            }
+        // compare the package
+        if (aPackage == null) {
+            shard.packagesAdded.add(bPackage);
+        } else if (bPackage == null) {
+            shard.packagesRemoved.add(aPackage);
+        } else if (a.packageHashes.getLong(aPackage.name()) == b.packageHashes.getLong(bPackage.name())) {
+            return shard;
+        } else {
+            shard.packagesChanged.add(bPackage);
         }
 
-        // compare classes
-        for (Map.Entry<String, Class> entry : b.classes.entrySet()) {
-            Class aClass = a.classes.get(entry.getKey());
-            if (aClass == null) {
-                classesAdded.add(entry.getValue());
-            } else {
-                if (!entry.getValue().members().equals(aClass.members())) {
-                    classesChanged.add(entry.getValue());
-                }
+        // compare classes and their members
+        if (bPackage != null) {
+            for (Class bClass : bPackage.classes()) {
+                diffClass(bClass, a, b, shard, membersAdded, membersRemoved, membersChanged);
             }
         }
-        for (Map.Entry<String, Class> entry : a.classes.entrySet()) {
-            if (!b.classes.containsKey(entry.getKey())) {
-                classesRemoved.add(entry.getValue());
+        if (aPackage != null) {
+            for (Class aClass : aPackage.classes()) {
+                findRemovedClasses(aClass, a, b, shard, membersRemoved);
             }
         }
 
-        // compare members
-        for (Map.Entry<String, Member> entry : b.members.entrySet()) {
-            Member aMember = a.members.get(entry.getKey());
-            if (aMember == null) {
-                membersAdded.add(entry.getValue());
-            } else {
-                if (!entry.getValue().equals(aMember)) {
-                    membersChanged.add(entry.getValue());
+        shard.membersAdded.putAll(membersAdded.stream().collect(Collectors.groupingBy((m) -> m.parent().name())));
+        shard.membersRemoved.putAll(membersRemoved.stream().collect(Collectors.groupingBy((m) -> m.parent().name())));
+        shard.membersChanged.putAll(membersChanged.stream().collect(Collectors.groupingBy((m) -> m.parent().name())));
+        return shard;
+    }
+
+    private void diffClass(Class bClass, ApiExport a, ApiExport b, DiffShard shard,
+                           List<Member> membersAdded, List<Member> membersRemoved, List<Member> membersChanged) {
+        Class aClass = a.classes.get(bClass.name());
+        if (aClass == null) {
+            shard.classesAdded.add(bClass);
+            membersAdded.addAll(bClass.members());
+        } else if (a.classHashes.getLong(aClass.name()) == b.classHashes.getLong(bClass.name())) {
+            // neither the class nor any of its inner classes changed
+            return;
+        } else if (!bClass.members().equals(aClass.members())) {
+            shard.classesChanged.add(bClass);
+            // lookups stay within the class, so the shards don't contend on the shared symbol table
+            Map<String, Member> aMembers = new LinkedHashMap<>();
+            for (Member member : aClass.members()) {
+                aMembers.put(member.name(), member);
+            }
+            for (Member bMember : bClass.members()) {
+                Member aMember = aMembers.remove(bMember.name());
+                if (aMember == null) {
+                    membersAdded.add(bMember);
+                } else if (!bMember.equals(aMember)) {
+                    membersChanged.add(bMember);
                 }
             }
+            membersRemoved.addAll(aMembers.values());
         }
-        for (Map.Entry<String, Member> entry : a.members.entrySet()) {
-            if (!b.members.containsKey(entry.getKey())) {
-                membersRemoved.add(entry.getValue());
-            }
+        for (Class inner : bClass.innerClasses()) {
+            diffClass(inner, a, b, shard, membersAdded, membersRemoved, membersChanged);
         }
+    }
 
-        ApiDiff diff = new ApiDiff(
-                versionA,
-                versionB,
-                packagesAdded,
-                packagesRemoved,
-                packagesChanged,
-                classesAdded,
-                classesRemoved,
-                classesChanged,
-                membersAdded.stream().collect(Collectors.groupingBy((m) -> m.parent().name())),
-                membersRemoved.stream().collect(Collectors.groupingBy((m) -> m.parent().name())),
-                membersChanged.stream().collect(Collectors.groupingBy((m) -> m.parent().name()))
-        );
-        diffs.put(versionA.name() + "-" + versionB.name(), diff);
+    private void findRemovedClasses(Class aClass, ApiExport a, ApiExport b, DiffShard shard, List<Member> membersRemoved) {
+        Class bClass = b.classes.get(aClass.name());
+        if (bClass == null) {
+            shard.classesRemoved.add(aClass);
+            membersRemoved.addAll(aClass.members());
+        } else if (a.classHashes.getLong(aClass.name()) == b.classHashes.getLong(bClass.name())) {
+            return;
+        }
+        for (Class inner : aClass.innerClasses()) {
+            findRemovedClasses(inner, a, b, shard, membersRemoved);
+        }
+    }
 
-        // poor mans type adapter
-        Map<String, Object> result = new LinkedHashMap<>();
-        result.put("versionA", versionA.name());
-        result.put("versionB", versionB.name());
-        result.put("packagesAdded", packagesAdded.stream().map(Package::name).toList());
-        result.put("packagesRemoved", packagesRemoved.stream().map(Package::name).toList());
-        result.put("packagesChanged", packagesChanged.stream().map(Package::name).toList());
-        result.put("classesAdded", classesAdded.stream().map(Class::name).toList());
-        result.put("classesRemoved", classesRemoved.stream().map(Class::name).toList());
-        result.put("classesChanged", classesChanged.stream().map(Class::name).toList());
-        result.put("membersAdded", diff.membersAdded.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().stream().map(Member::name).toList())));
-        result.put("membersRemoved", diff.membersRemoved.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().stream().map(Member::name).toList())));
-        result.put("membersChanged", diff.membersRemoved.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().stream().map(Member::name).toList())));
-        Files.writeString(output, gson.toJson(result));
+    private static class DiffShard {
+        final List<Package> packagesAdded = new ArrayList<>();
+        final List<Package> packagesRemoved = new ArrayList<>();
+        final List<Package> packagesChanged = new ArrayList<>();
+        final List<Class> classesAdded = new ArrayList<>();
+        final List<Class> classesRemoved = new ArrayList<>();
+        final List<Class> classesChanged = new ArrayList<>();
+        final Map<String, List<Member>> membersAdded = new HashMap<>();
+        final Map<String, List<Member>> membersRemoved = new HashMap<>();
+        final Map<String, List<Member>> membersChanged = new HashMap<>();
     }
 
     public record ApiDiff(VersionInfo versionA, VersionInfo versionB,
@@ -138,6 +293,86 @@ public class ApiDiffer {
                           Map<String, List<Member>> membersChanged) {
     }
 
+    /**
+     * Builds the export in a single pass over the json, without an intermediate tree of maps.
+     */
+    ApiExport readJson(VersionInfo version, Path json) throws IOException {
+        ApiExport export = new ApiExport(version, new LinkedHashMap<>(), new LinkedHashMap<>(), new Long2ObjectLinkedOpenHashMap<>(),
+                new Object2LongOpenHashMap<>(), new Object2LongOpenHashMap<>());
+        try (JsonReader in = new JsonReader(Files.newBufferedReader(json))) {
+            readElements(in, export, null);
+            hash(export);
+            return export;
+        } catch (ChildrenFirstException e) {
+            // exports written before doclet version 2 list the children before the element's own fields
+            return readJsonTree(version, json);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    ApiExport readJsonTree(VersionInfo version, Path json) throws IOException {
+        List<Map<String, Object>> input = gson.fromJson(Files.readString(json), ArrayList.class);
+        ApiExport export = new ApiExport(version, new LinkedHashMap<>(), new LinkedHashMap<>(), new Long2ObjectLinkedOpenHashMap<>(),
+                new Object2LongOpenHashMap<>(), new Object2LongOpenHashMap<>());
+        parse(input, export, null);
+        hash(export);
+        return export;
+    }
+
+    private void readElements(JsonReader in, ApiExport export, Element parent) throws IOException {
+        in.beginArray();
+        while (in.hasNext()) {
+            readElement(in, export, parent);
+        }
+        in.endArray();
+    }
+
+    private void readElement(JsonReader in, ApiExport export, Element parent) throws IOException {
+        String kind = null;
+        String name = null;
+        List<String> params = null;
+        String apiStatus = null;
+        String link = null;
+        boolean created = false;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String key = in.nextName();
+            if (created) {
+                throw new ChildrenFirstException();
+            }
+            switch (key) {
+                case "kind" -> kind = in.nextString();
+                case "name" -> name = in.nextString();
+                case "apiStatus" -> apiStatus = in.nextString();
+                case "link" -> link = in.nextString();
+                case "params" -> {
+                    params = new ArrayList<>();
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        params.add(in.nextString());
+                    }
+                    in.endArray();
+                }
+                case "children" -> {
+                    Element element = create(kind, name, params, apiStatus, link, export, parent);
+                    created = true;
+                    if (element == null || element instanceof Member) {
+                        in.skipValue();
+                    } else {
+                        readElements(in, export, element);
+                    }
+                }
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+
+        if (!created) {
+            create(kind, name, params, apiStatus, link, export, parent);
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private void parse(List<Map<String, Object>> input, ApiExport export, Element parent) {
         if (input == null) {
@@ -145,37 +380,112 @@ public class ApiDiffer {
         }
 
         for (Map<String, Object> element : input) {
-            ElementKind kind = ElementKind.valueOf((String) element.get("kind"));
-            switch (kind) {
-                case PACKAGE -> {
-                    Package p = new Package((String) element.get("name"), new ArrayList<>(), (String) element.get("apiStatus"), (String) element.get("link"));
-                    export.packages.put(p.name(), p);
-                    parse((List<Map<String, Object>>) element.get("children"), export, p);
-                }
-                case CLASS, ENUM, RECORD, INTERFACE, ANNOTATION_TYPE -> {
-                    Class c = new Class((String) element.get("name"), new ArrayList<>(), new ArrayList<>(), (String) element.get("apiStatus"), (String) element.get("link"));
-                    export.classes.put(c.name(), c);
-                    parent.addChild(c);
-                    parse((List<Map<String, Object>>) element.get("children"), export, c);
-                }
+            Element e = create((String) element.get("kind"), (String) element.get("name"), (List<String>) element.get("params"), (String) element.get("apiStatus"), (String) element.get("link"), export, parent);
+            if (e != null && !(e instanceof Member)) {
+                parse((List<Map<String, Object>>) element.get("children"), export, e);
+            }
+        }
+    }
 
-                case TYPE_PARAMETER -> {
-                    // ignore
-                }
+    private Element create(String kindName, String name, List<String> params, String apiStatus, String link, ApiExport export, Element parent) {
+        ElementKind kind = ElementKind.valueOf(kindName);
+        VersionInfo version = export.version();
+        name = symbols.intern(name);
+        apiStatus = symbols.intern(apiStatus);
+        String linkPath = symbols.linkPath(version, link);
+        switch (kind) {
+            case PACKAGE -> {
+                Package p = new Package(name, new ArrayList<>(), apiStatus, version, linkPath);
+                export.packages.put(p.name(), p);
+                return p;
+            }
+            case CLASS, ENUM, RECORD, INTERFACE, ANNOTATION_TYPE -> {
+                Class c = new Class(name, new ArrayList<>(), new ArrayList<>(), apiStatus, version, linkPath);
+                export.classes.put(c.name(), c);
+                parent.addChild(c);
+                return c;
+            }
 
-                case CONSTRUCTOR, METHOD, FIELD, ENUM_CONSTANT, RECORD_COMPONENT -> {
-                    Member m = new Member((String) element.get("name"), (String) element.get("kind"), (List<String>) element.get("params"), (String) element.get("apiStatus"), (Class) parent, (String) element.get("link"));
-                    export.members.put(m.name(), m);
-                    parent.addChild(m);
-                }
+            case TYPE_PARAMETER -> {
+                // ignore
+                return null;
+            }
 
-                default -> throw new IllegalArgumentException("Unknown element kind: " + kind);
+            case CONSTRUCTOR, METHOD, FIELD, ENUM_CONSTANT, RECORD_COMPONENT -> {
+                if (params != null) {
+                    params = params.stream().map(symbols::intern).toList();
+                }
+                Member m = new Member(name, symbols.intern(kindName), params, apiStatus, (Class) parent, linkPath);
+                export.members.put(symbols.memberKey(parent.name(), m.name()), m);
+                parent.addChild(m);
+                return m;
             }
+
+            default -> throw new IllegalArgumentException("Unknown element kind: " + kind);
         }
     }
 
+    private static class ChildrenFirstException extends IOException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * @param members       keyed by {@link SymbolTable#memberKey(String, String)}, owning class and signature
+     * @param packageHashes structural hash of every package, see {@link #hash(ApiExport)}
+     * @param classHashes   structural hash of every class, inner classes included
+     */
     public record ApiExport(VersionInfo version, Map<String, Package> packages, Map<String, Class> classes,
-                            Map<String, Member> members) {
+                            Long2ObjectMap<Member> members,
+                            Object2LongMap<String> packageHashes, Object2LongMap<String> classHashes) {
+    }
+
+    /**
+     * Fills in the structural hashes of the export, bottom-up from the members. Only the fields that diffs look at
+     * go in, not the version specific link, so equal hashes mean the subtree is the same in both versions.
+     */
+    static void hash(ApiExport export) {
+        for (Package p : export.packages.values()) {
+            Hasher hasher = HASH_FUNCTION.newHasher();
+            putString(hasher, p.name());
+            putString(hasher, p.apiStatus());
+            for (Class c : p.classes()) {
+                hasher.putLong(hash(c, export));
+            }
+            export.packageHashes.put(p.name(), hasher.hash().asLong());
+        }
+    }
+
+    private static long hash(Class c, ApiExport export) {
+        Hasher hasher = HASH_FUNCTION.newHasher();
+        putString(hasher, c.name());
+        putString(hasher, c.apiStatus());
+        hasher.putInt(c.members().size());
+        for (Member m : c.members()) {
+            putString(hasher, m.name());
+            putString(hasher, m.type());
+            putString(hasher, m.apiStatus());
+            // fields have no params at all, which isn't the same as an empty list
+            hasher.putInt(m.params() == null ? -1 : m.params().size());
+            if (m.params() != null) {
+                for (String param : m.params()) {
+                    putString(hasher, param);
+                }
+            }
+        }
+        for (Class inner : c.innerClasses()) {
+            hasher.putLong(hash(inner, export));
+        }
+        long hash = hasher.hash().asLong();
+        export.classHashes.put(c.name(), hash);
+        return hash;
+    }
+
+    private static void putString(Hasher hasher, @Nullable String value) {
+        // the length keeps neighbouring strings from running into each other
+        hasher.putInt(value == null ? -1 : value.length());
+        if (value != null) {
+            hasher.putUnencodedChars(value);
+        }
     }
 
     interface Element {
@@ -186,8 +496,15 @@ public class ApiDiffer {
         void addChild(Element child);
     }
 
+    // links are stored without the version specific part, see SymbolTable#linkPath
+
     record Package(@Expose String name, @Expose List<Class> classes, @Expose String apiStatus,
-                   @Expose String link) implements Element {
+                   VersionInfo version, String linkPath) implements Element {
+        @Override
+        public String link() {
+            return SymbolTable.link(version, linkPath);
+        }
+
         @Override
         public void addChild(Element child) {
             classes.add((Class) child);
@@ -195,7 +512,12 @@ public class ApiDiffer {
     }
 
     record Class(@Expose String name, @Expose List<Member> members, @Expose List<Class> innerClasses,
-                 @Expose String apiStatus, @Expose String link) implements Element {
+                 @Expose String apiStatus, VersionInfo version, String linkPath) implements Element {
+        @Override
+        public String link() {
+            return SymbolTable.link(version, linkPath);
+        }
+
         @Override
         public void addChild(Element child) {
             if (child instanceof Class c) {
@@ -209,7 +531,12 @@ public class ApiDiffer {
     }
 
     record Member(@Expose String name, @Expose String type, @Expose List<String> params, @Expose String apiStatus,
-                  Class parent, @Expose String link) implements Element {
+                  Class parent, String linkPath) implements Element {
+
+        @Override
+        public String link() {
+            return SymbolTable.link(parent.version(), linkPath);
+        }
 
         @Override
         public void addChild(Element child) {
@@ -0,0 +1,268 @@
+package dev.minidigger.apidiff;
+
+import dev.minidigger.apidiff.ApiDiffer.ApiExport;
+import dev.minidigger.apidiff.ApiDiffer.Class;
+import dev.minidigger.apidiff.ApiDiffer.Member;
+import dev.minidigger.apidiff.ApiDiffer.Package;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary form of an {@link ApiExport}, read back by memory-mapping the file.
+ * <p>
+ * Layout: magic, format version, string table, package index, class index, records.
+ * All numbers are unsigned LEB128 varints, strings are referenced by their index in the string table and
+ * nullable references are stored as index + 1, with 0 meaning null. The indexes map a name to the offset of
+ * its record, relative to the start of the records section. Links are stored as version independent paths,
+ * see {@link SymbolTable#linkPath(VersionInfo, String)}.
+ */
+public final class ApiExportCodec {
+
+    private static final int MAGIC = 0x41504944; // APID
+    private static final int FORMAT_VERSION = 2;
+
+    private static final int MEMBER = 0;
+    private static final int CLASS = 1;
+
+    private ApiExportCodec() {
+    }
+
+    public static void write(ApiExport export, Path file) throws IOException {
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        Map<Integer, Integer> packageIndex = new LinkedHashMap<>();
+        Map<Integer, Integer> classIndex = new LinkedHashMap<>();
+        Output records = new Output();
+        for (Package aPackage : export.packages().values()) {
+            packageIndex.put(string(strings, aPackage.name()), records.size());
+            records.writeVarInt(string(strings, aPackage.name()));
+            records.writeVarInt(nullableString(strings, aPackage.apiStatus()));
+            records.writeVarInt(nullableString(strings, aPackage.linkPath()));
+            records.writeVarInt(aPackage.classes().size());
+            for (Class aClass : aPackage.classes()) {
+                writeClass(aClass, strings, classIndex, records);
+            }
+        }
+
+        Output out = new Output();
+        out.writeVarInt(FORMAT_VERSION);
+        out.writeVarInt(strings.size());
+        for (String s : strings.keySet()) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeVarInt(bytes.length);
+            out.writeBytes(bytes);
+        }
+        writeIndex(packageIndex, out);
+        writeIndex(classIndex, out);
+
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream outputStream = Files.newOutputStream(tmp)) {
+            outputStream.write(ByteBuffer.allocate(4).putInt(MAGIC).array());
+            out.writeTo(outputStream);
+            records.writeTo(outputStream);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeClass(Class aClass, Map<String, Integer> strings, Map<Integer, Integer> classIndex, Output out) {
+        classIndex.put(string(strings, aClass.name()), out.size());
+        out.writeVarInt(string(strings, aClass.name()));
+        out.writeVarInt(nullableString(strings, aClass.apiStatus()));
+        out.writeVarInt(nullableString(strings, aClass.linkPath()));
+        out.writeVarInt(aClass.members().size() + aClass.innerClasses().size());
+        // the doclet emits children sorted by name, merging keeps that order for members and inner classes alike
+        int m = 0;
+        int c = 0;
+        while (m < aClass.members().size() || c < aClass.innerClasses().size()) {
+            boolean member = c == aClass.innerClasses().size()
+                    || (m < aClass.members().size() && aClass.members().get(m).name().compareTo(aClass.innerClasses().get(c).name()) < 0);
+            if (member) {
+                Member aMember = aClass.members().get(m++);
+                out.writeVarInt(MEMBER);
+                out.writeVarInt(string(strings, aMember.name()));
+                out.writeVarInt(string(strings, aMember.type()));
+                out.writeVarInt(nullableString(strings, aMember.apiStatus()));
+                out.writeVarInt(nullableString(strings, aMember.linkPath()));
+                if (aMember.params() == null) {
+                    out.writeVarInt(0);
+                } else {
+                    out.writeVarInt(aMember.params().size() + 1);
+                    for (String param : aMember.params()) {
+                        out.writeVarInt(string(strings, param));
+                    }
+                }
+            } else {
+                out.writeVarInt(CLASS);
+                writeClass(aClass.innerClasses().get(c++), strings, classIndex, out);
+            }
+        }
+    }
+
+    private static void writeIndex(Map<Integer, Integer> index, Output out) {
+        out.writeVarInt(index.size());
+        index.forEach((name, offset) -> {
+            out.writeVarInt(name);
+            out.writeVarInt(offset);
+        });
+    }
+
+    private static int string(Map<String, Integer> strings, String s) {
+        return strings.computeIfAbsent(s, k -> strings.size());
+    }
+
+    private static int nullableString(Map<String, Integer> strings, String s) {
+        return s == null ? 0 : string(strings, s) + 1;
+    }
+
+    public static ApiExport read(VersionInfo version, Path file, SymbolTable symbols) throws IOException {
+        return open(file, symbols).read(version);
+    }
+
+    public static Reader open(Path file, SymbolTable symbols) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException(file + " is not an api export");
+        }
+        int formatVersion = readVarInt(buffer);
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException(file + " has unsupported format version " + formatVersion);
+        }
+        return new Reader(buffer, symbols);
+    }
+
+    /**
+     * Whether {@code file} can be used in place of the json export it was converted from.
+     */
+    public static boolean isUpToDate(Path file, Path json) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return false;
+        }
+        return !Files.isRegularFile(json) || Files.getLastModifiedTime(file).compareTo(Files.getLastModifiedTime(json)) >= 0;
+    }
+
+    public static final class Reader {
+        private final ByteBuffer buffer;
+        private final SymbolTable symbols;
+        private final String[] strings;
+        private final Map<String, Integer> packageIndex;
+        private final int recordsStart;
+
+        private Reader(ByteBuffer buffer, SymbolTable symbols) {
+            this.buffer = buffer;
+            this.symbols = symbols;
+            this.strings = new String[readVarInt(buffer)];
+            for (int i = 0; i < strings.length; i++) {
+                byte[] bytes = new byte[readVarInt(buffer)];
+                buffer.get(bytes);
+                strings[i] = symbols.intern(new String(bytes, StandardCharsets.UTF_8));
+            }
+            this.packageIndex = readIndex();
+            readIndex(); // class index, not needed to decode a whole export
+            this.recordsStart = buffer.position();
+        }
+
+        private Map<String, Integer> readIndex() {
+            int size = readVarInt(buffer);
+            Map<String, Integer> index = new LinkedHashMap<>(size * 2);
+            for (int i = 0; i < size; i++) {
+                index.put(strings[readVarInt(buffer)], readVarInt(buffer));
+            }
+            return index;
+        }
+
+        public ApiExport read(VersionInfo version) {
+            ApiExport export = new ApiExport(version, new LinkedHashMap<>(), new LinkedHashMap<>(), new Long2ObjectLinkedOpenHashMap<>(),
+                    new Object2LongOpenHashMap<>(), new Object2LongOpenHashMap<>());
+            for (int offset : packageIndex.values()) {
+                ByteBuffer in = buffer.duplicate().position(recordsStart + offset);
+                Package aPackage = new Package(strings[readVarInt(in)], new ArrayList<>(), nullableString(in), version, nullableString(in));
+                export.packages().put(aPackage.name(), aPackage);
+                int classes = readVarInt(in);
+                for (int i = 0; i < classes; i++) {
+                    readClass(in, export, aPackage);
+                }
+            }
+            ApiDiffer.hash(export);
+            return export;
+        }
+
+        private void readClass(ByteBuffer in, ApiExport export, ApiDiffer.Element parent) {
+            Class aClass = new Class(strings[readVarInt(in)], new ArrayList<>(), new ArrayList<>(), nullableString(in), export.version(), nullableString(in));
+            export.classes().put(aClass.name(), aClass);
+            parent.addChild(aClass);
+            int children = readVarInt(in);
+            for (int i = 0; i < children; i++) {
+                if (readVarInt(in) == CLASS) {
+                    readClass(in, export, aClass);
+                    continue;
+                }
+                String name = strings[readVarInt(in)];
+                String type = strings[readVarInt(in)];
+                String apiStatus = nullableString(in);
+                String linkPath = nullableString(in);
+                List<String> params = null;
+                int paramCount = readVarInt(in);
+                if (paramCount > 0) {
+                    String[] paramArray = new String[paramCount - 1];
+                    for (int p = 0; p < paramArray.length; p++) {
+                        paramArray[p] = strings[readVarInt(in)];
+                    }
+                    params = List.of(paramArray);
+                }
+                Member member = new Member(name, type, params, apiStatus, aClass, linkPath);
+                export.members().put(symbols.memberKey(aClass.name(), member.name()), member);
+                aClass.addChild(member);
+            }
+        }
+
+        private String nullableString(ByteBuffer in) {
+            int id = readVarInt(in);
+            return id == 0 ? null : strings[id - 1];
+        }
+    }
+
+    static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private static final class Output extends ByteArrayOutputStream {
+        Output() {
+            super(64 * 1024);
+        }
+
+        void writeVarInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package dev.minidigger.apidiff;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
 import com.sun.tools.javac.code.Attribute;
 import com.sun.tools.javac.code.Symbol;
 import com.sun.tools.javac.code.Type;
@@ -13,7 +14,7 @@ import javax.lang.model.SourceVersion;
 import javax.lang.model.element.Element;
 import javax.lang.model.util.ElementScanner14;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
@@ -23,6 +24,10 @@ import static com.sun.tools.javac.code.TypeTag.ARRAY;
 import static com.sun.tools.javac.code.TypeTag.FORALL;
 
 public class ApiExportDoclet implements Doclet {
+    /**
+     * Bump whenever the exported json or its stats sidecar changes, so cached exports get regenerated.
+     */
+    public static final int VERSION = 3;
     private static final Comparator<Map<String, Object>> comparator = Comparator.comparing(m -> (String) m.get("name"));
 
     private Path outputFile;
@@ -69,34 +74,142 @@ public class ApiExportDoclet implements Doclet {
         return SourceVersion.RELEASE_21;
     }
 
+    /**
+     * The scan stats written next to an export, e.g. {@code paper-api-1.21.4.stats.json} for {@code paper-api-1.21.4.json}
+     * and {@code paper-api-1.21.4.stats.json.tmp} for {@code paper-api-1.21.4.json.tmp}.
+     */
+    public static Path statsFile(Path outputFile) {
+        String name = outputFile.getFileName().toString();
+        int json = name.lastIndexOf(".json");
+        return outputFile.resolveSibling(name.substring(0, json) + ".stats" + name.substring(json));
+    }
+
     @Override
     public boolean run(DocletEnvironment environment) {
-        try (var out = new PrintWriter(Files.newBufferedWriter(outputFile))) {
-            Gson gson = new GsonBuilder().setPrettyPrinting().create();
-            ShowElements se = new ShowElements(mcVersion);
-            Set<Map<String, Object>> result = new TreeSet<>(comparator);
-            se.scan(environment.getSpecifiedElements(), result);
-            out.println(gson.toJson(result));
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        ScanStats stats = new ScanStats();
+        ShowElements se = new ShowElements(mcVersion, stats);
+        // every specified element (usually a package) is scanned, sorted and written on its own,
+        // so only one package subtree has to be kept in memory
+        List<? extends Element> specifiedElements = environment.getSpecifiedElements().stream()
+                .sorted(Comparator.comparing(Element::toString))
+                .toList();
+        try (Writer writer = Files.newBufferedWriter(outputFile); JsonWriter out = gson.newJsonWriter(writer)) {
+            Set<String> written = new HashSet<>();
+            out.beginArray();
+            for (Element specifiedElement : specifiedElements) {
+                Set<Map<String, Object>> result = new TreeSet<>(comparator);
+                stats.current = stats.packages.computeIfAbsent(environment.getElementUtils().getPackageOf(specifiedElement).toString(), p -> new PackageStats());
+                long start = System.nanoTime();
+                se.scan(specifiedElement, result);
+                stats.current.nanos += System.nanoTime() - start;
+                for (Map<String, Object> element : result) {
+                    if (written.add((String) element.get("name"))) {
+                        gson.toJson(element, Map.class, out);
+                    }
+                }
+            }
+            out.endArray();
+            out.flush();
+            writer.write(System.lineSeparator());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        try {
+            Files.writeString(statsFile(outputFile), gson.toJson(stats.toJson(mcVersion)));
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        if (!stats.failures.isEmpty()) {
+            System.err.println("Swallowed " + stats.failures.size() + " scan failures in " + mcVersion + ", see " + statsFile(outputFile));
+        }
         return true;
     }
 
+    /**
+     * Where the scan spent its time and what it skipped. Scanning is single threaded, so plain fields do.
+     */
+    static class ScanStats {
+        private final Map<String, PackageStats> packages = new TreeMap<>();
+        private final List<Map<String, String>> failures = new ArrayList<>();
+        private PackageStats current = new PackageStats();
+
+        void failed(Element e, Exception ex) {
+            current.failures++;
+            Map<String, String> failure = new LinkedHashMap<>();
+            failure.put("element", e.toString());
+            failure.put("kind", e.getKind().toString());
+            failure.put("exception", ex.toString());
+            if (ex.getStackTrace().length > 0) {
+                failure.put("at", ex.getStackTrace()[0].toString());
+            }
+            failures.add(failure);
+        }
+
+        Map<String, Object> toJson(String mcVersion) {
+            long elements = 0;
+            long nanos = 0;
+            long metadataLookups = 0;
+            long annotations = 0;
+            // slowest first, these are the ones worth looking at
+            List<Map<String, Object>> perPackage = new ArrayList<>();
+            List<Map.Entry<String, PackageStats>> sorted = new ArrayList<>(packages.entrySet());
+            sorted.sort(Comparator.comparingLong((Map.Entry<String, PackageStats> entry) -> entry.getValue().nanos).reversed());
+            for (Map.Entry<String, PackageStats> entry : sorted) {
+                PackageStats stats = entry.getValue();
+                elements += stats.elements;
+                nanos += stats.nanos;
+                metadataLookups += stats.metadataLookups;
+                annotations += stats.annotations;
+                Map<String, Object> result = new LinkedHashMap<>();
+                result.put("name", entry.getKey());
+                result.put("elements", stats.elements);
+                result.put("millis", stats.nanos / 1_000_000);
+                result.put("failures", stats.failures);
+                result.put("metadataLookups", stats.metadataLookups);
+                result.put("annotations", stats.annotations);
+                perPackage.add(result);
+            }
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("version", mcVersion);
+            result.put("elements", elements);
+            result.put("millis", nanos / 1_000_000);
+            result.put("metadataLookups", metadataLookups);
+            result.put("annotations", annotations);
+            result.put("failureCount", failures.size());
+            result.put("packages", perPackage);
+            result.put("failures", failures);
+            return result;
+        }
+    }
+
+    static class PackageStats {
+        private long elements;
+        private long nanos;
+        private int failures;
+        // symbols whose annotation metadata was read, and the declaration annotations found there
+        private long metadataLookups;
+        private long annotations;
+    }
+
     static class ShowElements extends ElementScanner14<Void, Set<Map<String, Object>>> {
         private final String mcVersion;
+        private final ScanStats stats;
 
-        ShowElements(String mcVersion) {
+        ShowElements(String mcVersion, ScanStats stats) {
             this.mcVersion = mcVersion;
+            this.stats = stats;
         }
 
         @Override
         public Void scan(Element e, Set<Map<String, Object>> result) {
             Map<String, Object> element = new LinkedHashMap<>();
             Set<Map<String, Object>> children = new TreeSet<>(comparator);
+            stats.current.elements++;
             element.put("kind", e.getKind());
             element.put("name", e.toString());
-            element.put("children", children);
 
             // total jank but gets rid of annotations on params
             if (e instanceof Symbol.MethodSymbol ms) {
@@ -149,7 +262,9 @@ public class ApiExportDoclet implements Doclet {
 
             // handle api status and deprecated
             if (e instanceof Symbol s && s.getMetadata() != null) {
+                stats.current.metadataLookups++;
                 for (Attribute.Compound attribute : s.getMetadata().getDeclarationAttributes()) {
+                    stats.current.annotations++;
                     String annotation = attribute.getAnnotationType().toString();
                     if (annotation.startsWith("org.jetbrains.annotations.ApiStatus.")) {
                         element.put("apiStatus", annotation.replace("org.jetbrains.annotations.ApiStatus.", ""));
@@ -174,11 +289,14 @@ public class ApiExportDoclet implements Doclet {
                 return null;
             }
 
+            // children go last, so readers can stream them after the element itself is complete
+            element.put("children", children);
             result.add(element);
             try {
                 super.scan(e, children);
             } catch (Exception ex) {
-                ex.printStackTrace();
+                // with --ignore-source-errors broken sources end up here, keep what was scanned so far
+                stats.failed(e, ex);
             }
 
             if (children.isEmpty()) {
@@ -0,0 +1,137 @@
+package dev.minidigger.apidiff;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * On-disk cache for downloaded artifacts, keyed by url and revalidated with conditional requests.
+ */
+public class ArtifactCache {
+
+    private static final int MAX_ATTEMPTS = 4;
+    private static final long INITIAL_BACKOFF_MILLIS = 500;
+
+    private final Path dir;
+    private final HttpClient client;
+    private final int maxConnectionsPerHost;
+    private final long initialBackoffMillis;
+    private final Map<String, Semaphore> hostLimits = new ConcurrentHashMap<>();
+
+    public ArtifactCache(Path dir, HttpClient client, int maxConnectionsPerHost) {
+        this(dir, client, maxConnectionsPerHost, INITIAL_BACKOFF_MILLIS);
+    }
+
+    /**
+     * @param initialBackoffMillis wait before the first retry, doubled for every further one
+     */
+    public ArtifactCache(Path dir, HttpClient client, int maxConnectionsPerHost, long initialBackoffMillis) {
+        this.dir = dir;
+        this.client = client;
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.initialBackoffMillis = initialBackoffMillis;
+    }
+
+    /**
+     * Returns the cached copy of {@code url}, downloading it only if the server reports a change.
+     */
+    public Artifact fetch(String url) throws Exception {
+        String key = HexFormat.of().formatHex(ExportManifest.sha256().digest(url.getBytes(StandardCharsets.UTF_8))).substring(0, 16);
+        Path file = dir.resolve(key + "-" + url.substring(url.lastIndexOf('/') + 1));
+        Path infoFile = dir.resolve(key + ".properties");
+
+        Properties info = new Properties();
+        if (Files.isRegularFile(file) && Files.isRegularFile(infoFile)) {
+            try (Reader reader = Files.newBufferedReader(infoFile)) {
+                info.load(reader);
+            }
+        }
+
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(SourceFetcher.REQUEST_TIMEOUT)
+                .header("User-Agent", SourceFetcher.USER_AGENT);
+        if (info.getProperty("etag") != null) {
+            request.header("If-None-Match", info.getProperty("etag"));
+        }
+        if (info.getProperty("lastModified") != null) {
+            request.header("If-Modified-Since", info.getProperty("lastModified"));
+        }
+
+        Files.createDirectories(dir);
+        Path tmp = dir.resolve(file.getFileName() + ".tmp");
+        HttpResponse<Path> response = send(request.build(), responseInfo -> responseInfo.statusCode() == 200
+                // an interrupted download may have left a longer tmp file behind
+                ? HttpResponse.BodySubscribers.ofFile(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+                : HttpResponse.BodySubscribers.replacing(null));
+        if (response.statusCode() == 304) {
+            return new Artifact(file, false, 0);
+        }
+        if (response.statusCode() != 200) {
+            throw new IOException("Could not download " + url + ", status code " + response.statusCode());
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        info.clear();
+        info.setProperty("url", url);
+        response.headers().firstValue("ETag").ifPresent(etag -> info.setProperty("etag", etag));
+        response.headers().firstValue("Last-Modified").ifPresent(lastModified -> info.setProperty("lastModified", lastModified));
+        try (Writer writer = Files.newBufferedWriter(infoFile)) {
+            info.store(writer, null);
+        }
+        return new Artifact(file, true, Files.size(file));
+    }
+
+    /**
+     * Sends the request while holding a slot of the per-host limit, retrying connection errors and
+     * 429/5xx responses with exponential backoff.
+     */
+    private <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) throws IOException, InterruptedException {
+        Semaphore hostLimit = hostLimits.computeIfAbsent(request.uri().getHost(), host -> new Semaphore(maxConnectionsPerHost));
+        long backoff = initialBackoffMillis;
+        for (int attempt = 1; ; attempt++) {
+            HttpResponse<T> response = null;
+            IOException failure = null;
+            hostLimit.acquire();
+            try {
+                response = client.send(request, bodyHandler);
+            } catch (IOException e) {
+                failure = e;
+            } finally {
+                hostLimit.release();
+            }
+
+            boolean retryable = failure != null || response.statusCode() == 429 || response.statusCode() >= 500;
+            if (!retryable || attempt == MAX_ATTEMPTS) {
+                if (failure != null) {
+                    throw failure;
+                }
+                return response;
+            }
+            System.err.println("Retrying " + request.uri() + " in " + backoff + "ms (" + (failure != null ? failure : "status code " + response.statusCode()) + ")");
+            Thread.sleep(backoff);
+            backoff *= 2;
+        }
+    }
+
+    /**
+     * @param file       the cached copy
+     * @param changed    whether the content was (re)downloaded by this fetch
+     * @param downloaded bytes transferred for this fetch, 0 if the cached copy was still current
+     */
+    public record Artifact(Path file, boolean changed, long downloaded) {
+    }
+}
@@ -0,0 +1,207 @@
+package dev.minidigger.apidiff;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dev.minidigger.apidiff.ApiDiffer.ApiDiff;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Serves diffs between any two exported versions, computed and rendered on first request.
+ * Diffs come from a {@link PresenceIndex} over all exported versions, built once, so a request doesn't load any export.
+ * The index is built again when a version is exported for the first time or again.
+ * Recent diffs are kept in a bounded cache, pages are rendered straight into the response.
+ */
+public class DiffServer {
+
+    private final Path raw = Path.of("output/raw");
+    private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+    private final ApiDiffer apiDiffer;
+    private final HtmlGenerator htmlGenerator;
+    private final LruCache<String, ApiDiff> diffs;
+    // the exports the index was built from, each version with the modification time of its json
+    private Map<String, FileTime> indexedExports = Map.of();
+    private PresenceIndex index;
+    private long generation;
+
+    public DiffServer(ApiDiffer apiDiffer, HtmlGenerator htmlGenerator, int maxCachedDiffs) {
+        this.apiDiffer = apiDiffer;
+        this.htmlGenerator = htmlGenerator;
+        this.diffs = new LruCache<>(maxCachedDiffs);
+    }
+
+    public HttpServer start(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/", this::handleIndex);
+        server.createContext("/diff", this::handleDiff);
+        server.createContext("/stats", this::handleStats);
+        // requests mostly wait on disk or on another request computing the same diff
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+        System.out.println("Serving diffs on http://localhost:" + server.getAddress().getPort() + "/");
+        return server;
+    }
+
+    private void handleIndex(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        if (!path.equals("/") && !path.equals("/index.html")) {
+            send(exchange, 404, "text/plain", "Not found".getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        String options = exports().keySet().stream()
+                .map(v -> "    <option>" + v + "</option>")
+                .collect(Collectors.joining("\n"));
+        String html = """
+                <html lang="en">
+                <head>
+                    <title>ApiDiff</title>
+                </head>
+                <body>
+                <h1>ApiDiff</h1>
+                <form action="diff">
+                  <select name="a">
+                %s
+                  </select>
+                  <select name="b">
+                %s
+                  </select>
+                  <button>Diff</button>
+                </form>
+                <a href="stats">Cache stats</a>
+                </body>
+                </html>
+                """.formatted(options, options);
+        send(exchange, 200, "text/html; charset=utf-8", html.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void handleDiff(HttpExchange exchange) throws IOException {
+        Map<String, String> query = query(exchange);
+        String a = query.get("a");
+        String b = query.get("b");
+        Map<String, FileTime> exports = exports();
+        if (a == null || b == null || !exports.containsKey(a) || !exports.containsKey(b)) {
+            send(exchange, 404, "text/plain", ("Unknown versions " + a + " and " + b).getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+
+        boolean cached;
+        ApiDiff diff;
+        try {
+            Indexed indexed = index(exports);
+            // a diff computed from an older index can still be put after the rebuild cleared the cache,
+            // with the generation in the key it is never served
+            String key = indexed.generation() + ":" + a + "-" + b;
+            cached = diffs.contains(key);
+            diff = diffs.computeIfAbsent(key, k -> indexed.index().apiDiff(version(a), version(b)));
+        } catch (RuntimeException e) {
+            System.err.println("Failed to diff " + a + " and " + b + ": " + e);
+            send(exchange, 500, "text/plain", ("Failed to diff " + a + " and " + b).getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        exchange.getResponseHeaders().set("X-Cache", cached ? "HIT" : "MISS");
+        exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+        // chunked, the page goes out while it is rendered instead of being built in memory first
+        exchange.sendResponseHeaders(200, 0);
+        try (Writer html = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8))) {
+            htmlGenerator.writeDiff(diff, html);
+        }
+    }
+
+    /**
+     * The index over {@code exports}, built again once a version got exported for the first time or again.
+     */
+    private synchronized Indexed index(Map<String, FileTime> exports) {
+        if (index == null || !exports.equals(indexedExports)) {
+            System.out.println("Indexing " + exports.size() + " versions");
+            // a version exported again has to be loaded again instead of coming from the loaded exports
+            indexedExports.forEach((version, modified) -> {
+                if (!modified.equals(exports.get(version))) {
+                    apiDiffer.exports.remove(version);
+                }
+            });
+            index = PresenceIndex.build(exports.keySet().stream().map(DiffServer::version).toList(), apiDiffer);
+            indexedExports = exports;
+            generation++;
+            diffs.clear();
+        }
+        return new Indexed(index, generation);
+    }
+
+    private record Indexed(PresenceIndex index, long generation) {
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        Map<String, LruCache.Stats> stats = new LinkedHashMap<>();
+        stats.put("diffs", diffs.stats());
+        stats.put("exports", apiDiffer.exports.stats());
+        send(exchange, 200, "application/json", gson.toJson(stats).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * All versions that have a raw export, oldest first, with the modification time of their json.
+     */
+    private Map<String, FileTime> exports() throws IOException {
+        List<String> versions;
+        try (Stream<Path> files = Files.list(raw)) {
+            versions = files.map(p -> p.getFileName().toString())
+                    .filter(name -> name.startsWith("paper-api-") && name.endsWith(".json") && !name.endsWith(".stats.json") && !name.contains("-diff-"))
+                    .map(name -> name.substring("paper-api-".length(), name.length() - ".json".length()))
+                    .sorted(HtmlGenerator::compareVersionAware)
+                    .toList();
+        }
+        Map<String, FileTime> exports = new LinkedHashMap<>();
+        for (String version : versions) {
+            exports.put(version, Files.getLastModifiedTime(raw.resolve("paper-api-" + version + ".json")));
+        }
+        return exports;
+    }
+
+    private static VersionInfo version(String name) {
+        // only the name is needed to find the export on disk
+        return new VersionInfo(name, 0, "STABLE");
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> result = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return result;
+        }
+        for (String param : query.split("&")) {
+            int split = param.indexOf('=');
+            if (split > 0) {
+                result.put(URLDecoder.decode(param.substring(0, split), StandardCharsets.UTF_8),
+                        URLDecoder.decode(param.substring(split + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return result;
+    }
+}
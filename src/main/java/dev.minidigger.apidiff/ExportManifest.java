@@ -0,0 +1,121 @@
+package dev.minidigger.apidiff;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * Remembers which inputs produced each raw api export, so versions whose sources didn't change skip the doclet.
+ */
+public class ExportManifest {
+
+    private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+    private final Path file;
+    private final Map<String, Entry> entries = new TreeMap<>();
+
+    public ExportManifest(Path file) {
+        this.file = file;
+        if (Files.isRegularFile(file)) {
+            try (Reader reader = Files.newBufferedReader(file)) {
+                Map<String, Entry> loaded = gson.fromJson(reader, TypeToken.getParameterized(Map.class, String.class, Entry.class).getType());
+                if (loaded != null) {
+                    entries.putAll(loaded);
+                }
+            } catch (Exception e) {
+                System.err.println("Ignoring unreadable export manifest " + file + ": " + e);
+            }
+        }
+    }
+
+    public synchronized boolean isUpToDate(VersionInfo version, String key) {
+        Entry entry = entries.get(version.name());
+        return entry != null && entry.key().equals(key) && Files.isRegularFile(Path.of(entry.output()));
+    }
+
+    /**
+     * @return the key the current export of the version was generated with, null if there is none
+     */
+    public synchronized @Nullable String currentKey(VersionInfo version) {
+        Entry entry = entries.get(version.name());
+        return entry == null ? null : entry.key();
+    }
+
+    public synchronized void put(VersionInfo version, String key, Path output) throws IOException {
+        entries.put(version.name(), new Entry(key, output.toString()));
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(tmp, gson.toJson(entries));
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Builds the cache key of an export from everything that influences its content.
+     */
+    public static String key(String sourcesHash, String packages) {
+        MessageDigest digest = sha256();
+        digest.update(("doclet:" + ApiExportDoclet.VERSION + "\n").getBytes(StandardCharsets.UTF_8));
+        digest.update(("java:" + Runtime.version() + "\n").getBytes(StandardCharsets.UTF_8));
+        digest.update(("packages:" + packages + "\n").getBytes(StandardCharsets.UTF_8));
+        digest.update(("sources:" + sourcesHash + "\n").getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Hashes the relative path and content of every file below {@code dir}, in a stable order.
+     */
+    public static String hashSources(Path dir) throws IOException {
+        MessageDigest digest = sha256();
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            files = walk.filter(Files::isRegularFile)
+                    .sorted()
+                    .toList();
+        }
+        for (Path f : files) {
+            digest.update(dir.relativize(f).toString().replace('\\', '/').getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(Files.readAllBytes(f));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    public static String hashFile(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            byte[] buffer = new byte[64 * 1024];
+            int len;
+            while ((len = inputStream.read(buffer)) > 0) {
+                digest.update(buffer, 0, len);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    record Entry(String key, String output) {
+    }
+}
@@ -5,9 +5,14 @@ import dev.minidigger.apidiff.ApiDiffer.Member;
 import dev.minidigger.apidiff.SinceGenerator.SinceReport;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
@@ -22,7 +27,15 @@ import static dev.minidigger.apidiff.ApiDiffer.Package;
 
 public class HtmlGenerator {
 
-    private final Path output = Path.of("output");
+    // bump when the pages change, so incremental runs render all of them again
+    public static final int VERSION = 1;
+
+    // one small index and a page per package instead of a single since.html with the whole api
+    private static final boolean SHARDED_SINCE = Boolean.getBoolean("apidiff.shardedSince");
+
+    private static final Pattern VERSION_PATTERN = Pattern.compile("(\\d+(?:\\.\\d+)*)");
+
+    private final Path output;
 
     private final ApiDiffer apiDiffer;
     private final String css = """
@@ -60,19 +73,27 @@ public class HtmlGenerator {
             """;
 
     public HtmlGenerator(ApiDiffer apiDiffer) {
+        this(apiDiffer, Path.of("output"));
+    }
+
+    public HtmlGenerator(ApiDiffer apiDiffer, Path output) {
         this.apiDiffer = apiDiffer;
+        this.output = output;
     }
 
-    public void generateIndex() throws Exception {
+    /**
+     * @param diffNames the version pairs that have a diff page, e.g. {@code 1.21.3-1.21.4}
+     */
+    public void generateIndex(Collection<String> diffNames) throws Exception {
         try (Stream<Path> files = Files.list(output.resolve("raw"))) {
-            String rawData = files.filter(Files::isRegularFile).filter(p -> p.toString().endsWith(".json"))
+            String rawData = files.filter(Files::isRegularFile).filter(p -> p.toString().endsWith(".json") && !p.toString().endsWith(".stats.json"))
                     .map(Path::getFileName).map(Path::toString).sorted(HtmlGenerator::compareVersionAware)
                     .map((s) -> "    <li><a href=\"raw/" + s + "\">" + s + "</a></li>")
                     .collect(Collectors.joining("\n", "  <ul index>\n", "\n  </ul>"));
-            String diffs = apiDiffer.diffs.keySet().stream().sorted(HtmlGenerator::compareVersionAware)
+            String diffs = diffNames.stream().sorted(HtmlGenerator::compareVersionAware)
                     .map((s) -> "    <li><a href=\"diff-" + s + ".html\">" + s + "</a></li>")
                     .collect(Collectors.joining("\n", "  <ul index>\n", "\n  </ul>"));
-            String since = "<a href=\"since.html\">Since</a>";
+            String since = SHARDED_SINCE ? "<a href=\"since/index.html\">Since</a>" : "<a href=\"since.html\">Since</a>";
             String index = """
                     <html lang="en">
                     <head>
@@ -91,109 +112,248 @@ public class HtmlGenerator {
                     </html>
                     """.formatted(css, since, diffs, rawData);
             Files.writeString(output.resolve("index.html"), index);
+            Metrics.pageWritten(output.resolve("index.html"));
         }
     }
 
+    /**
+     * The page the index links to for the since report.
+     */
+    public Path sincePage() {
+        return SHARDED_SINCE ? output.resolve("since/index.html") : output.resolve("since.html");
+    }
+
     public void generateSince(List<VersionInfo> versions, SinceReport sinceReport) throws IOException {
-        StringBuilder html = new StringBuilder("""
-                <html lang="en">
-                <head>
-                    <title>Since | ApiDiff</title>
-                    %s
-                </head>
-                <body>
-                <h1>Since</h1>
-                """.formatted(css));
+        if (SHARDED_SINCE) {
+            generateShardedSince(versions, sinceReport);
+            return;
+        }
+        // the since page lists the whole api, so it goes straight to disk instead of being built in memory
+        try (Writer html = Files.newBufferedWriter(output.resolve("since.html"), StandardCharsets.UTF_8)) {
+            writeSince(versions, sinceReport, html);
+        }
+        Metrics.pageWritten(output.resolve("since.html"));
+    }
+
+    public void writeSince(List<VersionInfo> versions, SinceReport sinceReport, Writer html) throws IOException {
+        html.write("<html lang=\"en\">\n<head>\n    <title>Since | ApiDiff</title>\n    ");
+        html.write(css);
+        html.write("\n</head>\n<body>\n<h1>Since</h1>\n");
         ApiExport lastExport = apiDiffer.load(versions.getLast());
         for (Package aPackage : lastExport.packages().values()) {
-            html.append("<h2><a href=\"").append(aPackage.link()).append("\">").append(htmlEscape(aPackage.name())).append(" (since: ").append(sinceReport.packages().get(aPackage.name())).append(")").append("</a></h2>\n");
-
+            writeSinceHeading(html, "h2", aPackage.link(), aPackage.name(), sinceReport.packages().get(aPackage.name()));
             for (Class aClass : aPackage.classes()) {
-                html.append("<h3><a href=\"").append(aClass.link()).append("\">").append(htmlEscape(aClass.name())).append(" (since: ").append(sinceReport.classes().get(aClass.name())).append(")").append("</a></h2>\n");
-                html.append("<ul>\n");
-                for (Member member : aClass.members()) {
-                    html.append("  <li><a href=\"").append(member.link()).append("\">").append(htmlEscape(member.name())).append(" (since: ").append(sinceReport.members().get(aClass.name(), member.name())).append(")").append("</a></li>\n");
-                }
-                html.append("</ul>\n");
+                writeSinceClass(html, "h3", aClass, sinceReport);
                 for (Class innerClass : aClass.innerClasses()) {
-                    html.append("<h4><a href=\"").append(innerClass.link()).append("\">").append(htmlEscape(innerClass.name())).append(" (since: ").append(sinceReport.classes().get(innerClass.name())).append(")").append("</a></h2>\n");
-                    html.append("<ul>\n");
-                    for (Member member : innerClass.members()) {
-                        html.append("  <li><a href=\"").append(member.link()).append("\">").append(htmlEscape(member.name())).append(" (since: ").append(sinceReport.members().get(innerClass.name(), member.name())).append(")").append("</a></li>\n");
+                    writeSinceClass(html, "h4", innerClass, sinceReport);
+                }
+            }
+        }
+        html.write("</body>\n</html>");
+    }
+
+    /**
+     * Writes since/index.html with just the packages, and a page per package with its classes and members.
+     * The package pages don't depend on each other and are written in parallel.
+     */
+    public void generateShardedSince(List<VersionInfo> versions, SinceReport sinceReport) throws IOException {
+        Path sinceDir = output.resolve("since");
+        Files.createDirectories(sinceDir);
+        // pages of packages that no longer exist would otherwise stay around
+        try (Stream<Path> files = Files.list(sinceDir)) {
+            for (Path file : files.filter(p -> p.toString().endsWith(".html")).toList()) {
+                Files.delete(file);
+            }
+        }
+
+        ApiExport lastExport = apiDiffer.load(versions.getLast());
+        try (Writer html = Files.newBufferedWriter(sinceDir.resolve("index.html"), StandardCharsets.UTF_8)) {
+            html.write("<html lang=\"en\">\n<head>\n    <title>Since | ApiDiff</title>\n    ");
+            html.write(css);
+            html.write("\n</head>\n<body>\n<a href='../index.html'>Back</a>\n<h1>Since</h1>\n<ul index>\n");
+            for (Package aPackage : lastExport.packages().values()) {
+                html.write("  <li><a href=\"");
+                html.write(URLEncoder.encode(aPackage.name(), StandardCharsets.UTF_8));
+                html.write(".html\">");
+                htmlEscape(html, aPackage.name());
+                html.write(" (since: ");
+                html.write(String.valueOf(sinceReport.packages().get(aPackage.name())));
+                html.write(")</a></li>\n");
+            }
+            html.write("</ul>\n</body>\n</html>");
+        }
+        Metrics.pageWritten(sinceDir.resolve("index.html"));
+
+        try {
+            lastExport.packages().values().parallelStream().forEach(aPackage -> {
+                Path page = sinceDir.resolve(aPackage.name() + ".html");
+                try {
+                    try (Writer html = Files.newBufferedWriter(page, StandardCharsets.UTF_8)) {
+                        html.write("<html lang=\"en\">\n<head>\n    <title>");
+                        htmlEscape(html, aPackage.name());
+                        html.write(" | Since | ApiDiff</title>\n    ");
+                        html.write(css);
+                        html.write("\n</head>\n<body>\n<a href='index.html'>Back</a>\n");
+                        writeSinceHeading(html, "h2", aPackage.link(), aPackage.name(), sinceReport.packages().get(aPackage.name()));
+                        for (Class aClass : aPackage.classes()) {
+                            writeSinceClass(html, "h3", aClass, sinceReport);
+                            for (Class innerClass : aClass.innerClasses()) {
+                                writeSinceClass(html, "h4", innerClass, sinceReport);
+                            }
+                        }
+                        html.write("</body>\n</html>");
                     }
-                    html.append("</ul>\n");
+                    Metrics.pageWritten(page);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
                 }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void writeSinceClass(Writer html, String tag, Class aClass, SinceReport sinceReport) throws IOException {
+        writeSinceHeading(html, tag, aClass.link(), aClass.name(), sinceReport.classes().get(aClass.name()));
+        html.write("<ul>\n");
+        for (Member member : aClass.members()) {
+            html.write("  <li><a href=\"");
+            html.write(String.valueOf(member.link()));
+            html.write("\">");
+            htmlEscape(html, member.name());
+            html.write(" (since: ");
+            html.write(String.valueOf(sinceReport.members().get(aClass.name(), member.name())));
+            html.write(")</a></li>\n");
+        }
+        html.write("</ul>\n");
+    }
+
+    private void writeSinceHeading(Writer html, String tag, String link, String name, String since) throws IOException {
+        html.write("<");
+        html.write(tag);
+        html.write("><a href=\"");
+        html.write(String.valueOf(link));
+        html.write("\">");
+        htmlEscape(html, name);
+        html.write(" (since: ");
+        html.write(String.valueOf(since));
+        // every heading has always been closed as h2, browsers don't mind
+        html.write(")</a></h2>\n");
+    }
+
+    /**
+     * Hands the diff page to the pipeline, the caller can go on with the next diff right away.
+     * The diff is released once its page is written.
+     */
+    public void generateDiff(VersionInfo versionA, VersionInfo versionB, RenderPipeline pipeline) {
+        ApiDiff diff = apiDiffer.diffs.remove(versionA.name() + "-" + versionB.name());
+        pipeline.submit(diffPage(versionA, versionB), html -> writeDiff(diff, html));
+    }
+
+    private Path diffPage(VersionInfo versionA, VersionInfo versionB) {
+        return output.resolve("diff-" + versionA.name() + "-" + versionB.name() + ".html");
+    }
+
+    public void writeDiff(ApiDiff diff, Writer html) throws IOException {
+        String versionA = diff.versionA().name();
+        String versionB = diff.versionB().name();
+        html.write("<html lang=\"en\">\n<head>\n    <title>");
+        html.write(versionA);
+        html.write(" ");
+        html.write(versionB);
+        html.write(" | ApiDiff</title>\n    ");
+        html.write(css);
+        html.write("\n</head>\n<body>\n<a href='index.html'>Back</a>\n<h1>Diff between ");
+        html.write(versionA);
+        html.write(" and ");
+        html.write(versionB);
+        html.write("</h1>");
+        writeSection(html, "Added packages");
+        list(html, diff.packagesAdded());
+        writeSection(html, "Removed packages");
+        list(html, diff.packagesRemoved());
+        writeSection(html, "Changed packages");
+        list(html, diff.packagesChanged());
+        writeSection(html, "Added classes");
+        list(html, diff.classesAdded());
+        writeSection(html, "Removed classes");
+        list(html, diff.classesRemoved());
+        writeSection(html, "Changed classes");
+        list(html, diff.classesChanged());
+        writeSection(html, "Added members");
+        group(html, diff.membersAdded());
+        writeSection(html, "Removed members");
+        group(html, diff.membersRemoved());
+        writeSection(html, "Changed members");
+        group(html, diff.membersChanged());
+        html.write("\n</body>\n</html>\n");
+    }
+
+    private void writeSection(Writer html, String title) throws IOException {
+        // starts the line after the previous heading or list
+        html.write("\n<h2>");
+        html.write(title);
+        html.write("</h2>\n");
+    }
+
+    private void group(Writer html, Map<String, List<Member>> input) throws IOException {
+        html.write(input.isEmpty() ? "<ul empty>" : "<ul nested>\n");
+        boolean first = true;
+        for (String c : input.keySet().stream().sorted().toList()) {
+            if (!first) {
+                html.write("\n");
+            }
+            first = false;
+            // the members already point to their class, no need to go through the export cache
+            String link = input.get(c).getFirst().parent().link();
+            html.write("<li>\n<h3><a href=\"");
+            html.write(String.valueOf(link));
+            html.write("\">");
+            htmlEscape(html, c);
+            html.write("</a></h3>\n");
+            list(html, input.get(c));
+            html.write("\n</li>\n");
+        }
+        html.write("\n</ul>");
+    }
+
+    private void list(Writer html, List<? extends Element> list) throws IOException {
+        html.write(list.isEmpty() ? "<ul empty>" : "<ul diff>\n");
+        boolean first = true;
+        for (Element element : list.stream().sorted(Comparator.comparing(Element::name)).toList()) {
+            if (!first) {
+                html.write("\n");
+            }
+            first = false;
+            html.write("  <li><a href=\"");
+            html.write(String.valueOf(element.link()));
+            html.write("\">");
+            htmlEscape(html, element.name());
+            html.write("</a></li>");
+        }
+        html.write("\n</ul>");
+    }
+
+    /**
+     * Escapes while writing, unchanged runs of characters are copied in one go.
+     */
+    private static void htmlEscape(Writer out, String s) throws IOException {
+        int start = 0;
+        for (int i = 0; i < s.length(); i++) {
+            String replacement = switch (s.charAt(i)) {
+                case '&' -> "&amp;";
+                case '<' -> "&lt;";
+                case '>' -> "&gt;";
+                case '"' -> "&quot;";
+                default -> null;
+            };
+            if (replacement != null) {
+                out.write(s, start, i - start);
+                out.write(replacement);
+                start = i + 1;
             }
         }
-        html.append("</body>\n</html>");
-        Files.writeString(output.resolve("since.html"), html.toString());
-    }
-
-    public void generateDiff(VersionInfo versionA, VersionInfo versionB) throws Exception {
-        ApiDiff diff = apiDiffer.diffs.get(versionA.name() + "-" + versionB.name());
-        String html = """
-                <html lang="en">
-                <head>
-                    <title>{versionA} {versionB} | ApiDiff</title>
-                    {css}
-                </head>
-                <body>
-                <a href='index.html'>Back</a>
-                <h1>Diff between {versionA} and {versionB}</h1>
-                <h2>Added packages</h2>
-                {packagesAdded}
-                <h2>Removed packages</h2>
-                {packagesRemoved}
-                <h2>Changed packages</h2>
-                {packagesChanged}
-                <h2>Added classes</h2>
-                {classesAdded}
-                <h2>Removed classes</h2>
-                {classesRemoved}
-                <h2>Changed classes</h2>
-                {classesChanged}
-                <h2>Added members</h2>
-                {membersAdded}
-                <h2>Removed members</h2>
-                {membersRemoved}
-                <h2>Changed members</h2>
-                {membersChanged}
-                </body>
-                </html>
-                """
-                .replace("{css}", css)
-                .replace("{versionA}", versionA.name())
-                .replace("{versionB}", versionB.name())
-                .replace("{packagesAdded}", list(diff.packagesAdded()))
-                .replace("{packagesRemoved}", list(diff.packagesRemoved()))
-                .replace("{packagesChanged}", list(diff.packagesChanged()))
-                .replace("{classesAdded}", list(diff.classesAdded()))
-                .replace("{classesRemoved}", list(diff.classesRemoved()))
-                .replace("{classesChanged}", list(diff.classesChanged()))
-                .replace("{membersAdded}", group(diff.membersAdded(), versionB))
-                .replace("{membersRemoved}", group(diff.membersRemoved(), versionA))
-                .replace("{membersChanged}", group(diff.membersChanged(), versionB));
-
-        Files.writeString(output.resolve("diff-" + versionA.name() + "-" + versionB.name() + ".html"), html);
-    }
-
-    private String group(Map<String, List<Member>> input, VersionInfo version) {
-        return input.keySet().stream().sorted()
-                .map((c) -> {
-                    String link = apiDiffer.load(version).classes().get(c).link();
-                    return "<li>\n<h3><a href=\"" + link + "\">" + htmlEscape(c) + "</a></h3>\n" + list(input.get(c)) + "\n</li>\n";
-                })
-                .collect(Collectors.joining("\n", input.isEmpty() ? "<ul empty>" : "<ul nested>\n", "\n</ul>"));
-    }
-
-    private String list(List<? extends Element> list) {
-        return list.stream().sorted(Comparator.comparing(Element::name))
-                .map((s) -> "  <li><a href=\"" + s.link() + "\">" + htmlEscape(s.name()) + "</a></li>")
-                .collect(Collectors.joining("\n", list.isEmpty() ? "<ul empty>" : "<ul diff>\n", "\n</ul>"));
-    }
-
-    private String htmlEscape(String s) {
-        return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+        out.write(s, start, s.length() - start);
     }
 
     public static int compareVersionAware(String a, String b) {
@@ -215,7 +375,8 @@ public class HtmlGenerator {
     }
 
     private static List<Integer> parseVersionParts(String s) {
-        Matcher m = Pattern.compile("(\\d+(?:\\.\\d+)*)").matcher(s);
+        // sorts call this a lot, so the pattern is only compiled once
+        Matcher m = VERSION_PATTERN.matcher(s);
         if (!m.find()) return java.util.List.of();
         String ver = m.group(1);
         String[] parts = ver.split("\\.");
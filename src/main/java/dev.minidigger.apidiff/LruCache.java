@@ -0,0 +1,111 @@
+package dev.minidigger.apidiff;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * Keeps at most {@code maxEntries} values in memory and evicts the least recently used one beyond that.
+ * An evicted value is simply computed again on its next use, e.g. an export is loaded from disk again.
+ * <p>
+ * Safe for concurrent use: loading happens outside the lock, and threads asking for a key that is
+ * currently being loaded wait for that load instead of computing the value a second time.
+ */
+public class LruCache<K, V> {
+
+    private final Map<K, V> entries;
+    private final Map<K, CompletableFuture<V>> loading = new HashMap<>();
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public LruCache(int maxEntries) {
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                if (size() > maxEntries) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public V computeIfAbsent(K key, Function<K, V> loader) {
+        CompletableFuture<V> future;
+        boolean load = false;
+        synchronized (this) {
+            V value = entries.get(key);
+            if (value != null) {
+                hits++;
+                return value;
+            }
+            future = loading.get(key);
+            if (future == null) {
+                future = new CompletableFuture<>();
+                loading.put(key, future);
+                load = true;
+                misses++;
+            } else {
+                // someone else is already loading it, that still saves us the work
+                hits++;
+            }
+        }
+
+        if (load) {
+            try {
+                V value = loader.apply(key);
+                synchronized (this) {
+                    entries.put(key, value);
+                    loading.remove(key);
+                }
+                future.complete(value);
+                return value;
+            } catch (Throwable t) {
+                // also on errors like OutOfMemoryError, otherwise the key stays marked as loading and
+                // everyone waiting for it, now or later, blocks forever
+                synchronized (this) {
+                    loading.remove(key);
+                }
+                future.completeExceptionally(t);
+                throw t;
+            }
+        }
+
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    public synchronized boolean contains(K key) {
+        return entries.containsKey(key);
+    }
+
+    public synchronized void remove(K key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Drops all values, loads that are still running put theirs in afterwards.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, evictions, entries.size());
+    }
+
+    public record Stats(long hits, long misses, long evictions, int size) {
+    }
+}
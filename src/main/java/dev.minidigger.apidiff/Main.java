@@ -3,25 +3,38 @@ package dev.minidigger.apidiff;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonParser;
 import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+
+import javax.tools.DocumentationTool;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
 
 import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
-import static jdk.javadoc.internal.tool.Main.execute;
 
 public class Main {
-    private static final URI API_URL = URI.create("https://fill.papermc.io/graphql");
+    private static final URI API_URL = URI.create(System.getProperty("apidiff.graphqlUrl", "https://fill.papermc.io/graphql"));
     // language=graphql
     private static final String VERSION_REQUEST = """
              {
@@ -46,122 +59,328 @@ public class Main {
             .replace("\n", "\\n")
             .replace("\"", "\\\"");
 
+    // every javadoc run gets its own javac context, so exports can run side by side
+    private static final int EXPORT_WORKERS = Integer.getInteger("apidiff.exportWorkers", Runtime.getRuntime().availableProcessors());
+    private static final int MAX_CONNECTIONS_PER_HOST = Integer.getInteger("apidiff.maxConnectionsPerHost", 8);
+    // every pair needs two exports in memory, so by default at most half of apidiff.maxLoadedExports
+    private static final int DIFF_WORKERS = Integer.getInteger("apidiff.diffWorkers",
+            Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), ApiDiffer.MAX_LOADED_EXPORTS / 2)));
+    // when false javadoc reads the sources jars directly instead of an extracted copy
+    private static final boolean EXTRACT_SOURCES = Boolean.parseBoolean(System.getProperty("apidiff.extractSources", "true"));
+    private static final int RENDER_WORKERS = Integer.getInteger("apidiff.renderWorkers", Runtime.getRuntime().availableProcessors());
+    // pages whose inputs didn't change since the last run are kept as they are
+    private static final boolean INCREMENTAL = Boolean.parseBoolean(System.getProperty("apidiff.incremental", "true"));
+    private static final int PORT = Integer.getInteger("apidiff.port", 8080);
+    private static final int MAX_CACHED_DIFFS = Integer.getInteger("apidiff.maxCachedDiffs", 32);
+
+    private final HttpClient client;
+
+    private final ExportManifest exportManifest = new ExportManifest(Path.of("cache/export-manifest.json"));
+    private final SiteManifest siteManifest = new SiteManifest(Path.of("cache/site-manifest.json"));
+    private final StageTimer timer = new StageTimer();
+
+    public Main(HttpClient client) {
+        this.client = client;
+    }
 
     public static void main(String[] args) throws Exception {
-        Main main = new Main();
+        if (args.length > 0 && args[0].equals("serve")) {
+            // diffs any two versions exported by a previous run, on request
+            ApiDiffer apiDiffer = new ApiDiffer();
+            new DiffServer(apiDiffer, new HtmlGenerator(apiDiffer), MAX_CACHED_DIFFS).start(PORT);
+            return;
+        }
+
+        List<VersionInfo> versions;
+        Main main;
+        SourceFetcher sourceFetcher;
+        try (HttpClient client = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(SourceFetcher.CONNECT_TIMEOUT).build()) {
+            main = new Main(client);
+            sourceFetcher = new SourceFetcher(client, MAX_CONNECTIONS_PER_HOST, EXTRACT_SOURCES);
+            StageTimer.Running fetchStage = main.timer.start("fetch");
+            versions = getVersions(main, sourceFetcher);
+            fetchStage.close();
+        }
         ApiDiffer apiDiffer = new ApiDiffer();
-        SourceFetcher sourceFetcher = new SourceFetcher();
 
-        List<VersionInfo> versions = getVersions(main, sourceFetcher);
+        // generate api-export json
+        StageTimer.Running exportStage = main.timer.start("export");
+        versions = main.generateApiExports(versions, sourceFetcher, EXPORT_WORKERS);
+        exportStage.close();
+
+        main.generateSite(versions, apiDiffer);
+        main.timer.print();
+        Metrics.write(Path.of("output/metrics.json"), main.timer.stages(), apiDiffer.exports.stats());
+    }
 
+    /**
+     * Diffs the adjacent versions and renders the site. With {@link #INCREMENTAL}, pages whose inputs
+     * didn't change since the last run are neither diffed nor rendered again.
+     */
+    public void generateSite(List<VersionInfo> versions, ApiDiffer apiDiffer) throws Exception {
         SinceGenerator sinceGenerator = new SinceGenerator(versions, apiDiffer);
         HtmlGenerator htmlGenerator = new HtmlGenerator(apiDiffer);
-        // generate api-export json
-        for (VersionInfo version : versions) {
-            main.generateApiExport(version);
-        }
 
-        for (int i = 0; i < versions.size() - 1; i++) {
-            apiDiffer.diff(versions.get(i), versions.get(i + 1), Path.of("output/raw/paper-api-diff-" + versions.get(i).name() + "-" + versions.get(i + 1).name() + ".json"));
-            htmlGenerator.generateDiff(versions.get(i), versions.get(i + 1));
+        List<String> pages = new ArrayList<>();
+        Map<String, String> rendered = new ConcurrentHashMap<>();
+        int skipped = 0;
+
+        // diff pages render on their own pool as soon as their diff exists, while the next pairs are diffed
+        try (RenderPipeline pipeline = new RenderPipeline(RENDER_WORKERS)) {
+            // adjacent pairs are independent of each other
+            StageTimer.Running diffStage = timer.start("diff");
+            List<Future<?>> pairs = new ArrayList<>();
+            try (ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, DIFF_WORKERS))) {
+                for (int i = 0; i < versions.size() - 1; i++) {
+                    VersionInfo versionA = versions.get(i);
+                    VersionInfo versionB = versions.get(i + 1);
+                    String page = "diff-" + versionA.name() + "-" + versionB.name();
+                    Path raw = Path.of("output/raw/paper-api-" + page + ".json");
+                    String fingerprint = SiteManifest.fingerprint(page, List.of(exportKey(versionA), exportKey(versionB)));
+                    pages.add(page);
+                    if (INCREMENTAL && siteManifest.isUpToDate(page, fingerprint, raw, Path.of("output/" + page + ".html"))) {
+                        skipped++;
+                        continue;
+                    }
+                    pairs.add(executor.submit(() -> {
+                        apiDiffer.diff(versionA, versionB, raw);
+                        htmlGenerator.generateDiff(versionA, versionB, pipeline);
+                        if (fingerprint != null) {
+                            rendered.put(page, fingerprint);
+                        }
+                        return null;
+                    }));
+                }
+            }
+            for (Future<?> pair : pairs) {
+                pair.get();
+            }
+            diffStage.close();
+            if (skipped > 0) {
+                System.out.println("Skipped " + skipped + " unchanged diff pages");
+            }
+
+            // the since report depends on every version
+            List<String> sinceInputs = new ArrayList<>();
+            sinceInputs.add(htmlGenerator.sincePage().toString());
+            for (VersionInfo version : versions) {
+                sinceInputs.add(version.name() + ":" + exportKey(version));
+            }
+            String sinceFingerprint = SiteManifest.fingerprint("since", sinceInputs);
+            pages.add("since");
+            if (INCREMENTAL && siteManifest.isUpToDate("since", sinceFingerprint, Path.of("output/raw/since.json"), htmlGenerator.sincePage())) {
+                System.out.println("Skipped unchanged since report");
+            } else {
+                // the since page streams straight to disk, meanwhile the pipeline finishes the diff pages
+                StageTimer.Running sinceStage = timer.start("since");
+                htmlGenerator.generateSince(versions, sinceGenerator.generate());
+                sinceStage.close();
+                if (sinceFingerprint != null) {
+                    rendered.put("since", sinceFingerprint);
+                }
+            }
+            // only what the pipeline didn't manage to overlap with the diffs and the since report
+            StageTimer.Running renderStage = timer.start("render");
+            pipeline.await();
+            renderStage.close();
         }
+        siteManifest.update(rendered, pages);
 
-//        main.generateApiExport("1.21.3");
-//        main.generateApiExport("1.21.4");
-//        apiDiffer.diff("1.21.3", "1.21.4", Path.of("output/raw/paper-api-diff-1.21.3-1.21.4.json"));
-//        htmlGenerator.generateDiff("1.21.3", "1.21.4");
+        // last, so it sees every finished page, including the ones skipped in this run
+        StageTimer.Running indexStage = timer.start("index");
+        htmlGenerator.generateIndex(siteManifest.diffs());
+        indexStage.close();
+    }
 
-        htmlGenerator.generateSince(versions, sinceGenerator.generate());
-        htmlGenerator.generateIndex();
+    private @Nullable String exportKey(VersionInfo version) {
+        return exportManifest.currentKey(version);
     }
 
     private static @NonNull List<VersionInfo> getVersions(Main main, SourceFetcher sourceFetcher) throws IOException, InterruptedException {
-        List<VersionInfo> versions;
+        Map<String, List<VersionInfo>> versionsMap;
 
         boolean automatic = true;
         if (automatic) {
-            var versionsMap = main.fetchVersions();
-            for (var it = versionsMap.entrySet().iterator(); it.hasNext(); ) {
-                var versionFamily = it.next();
-                var family = versionFamily.getKey();
-
-                versionFamily.getValue().removeIf(version -> {
-                    try {
-                        return version.name().contains("pre") || version.name().contains("rc") || !sourceFetcher.fetchSourcesJar(family, version);
-                    } catch (Exception e) {
-                        throw new RuntimeException(e);
-                    }
-                });
-
-                if (versionFamily.getValue().isEmpty()) {
-                    it.remove();
-                }
-            }
-
-            versions = versionsMap.values().stream()
-                    .flatMap(Collection::stream)
-                    .toList();
+            versionsMap = main.fetchVersions();
         } else {
             // TODO: automatically fetch build number and channel
-            versions = List.of(new VersionInfo("1.21.3", 0, "STABLE"), new VersionInfo("1.21.4", 0, "STABLE"));
-            versions.forEach(version -> {
-                try {
-                    sourceFetcher.fetchSourcesJar(version.name(), version);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
+            versionsMap = new LinkedHashMap<>();
+            versionsMap.put("1.21.3", List.of(new VersionInfo("1.21.3", 0, "STABLE")));
+            versionsMap.put("1.21.4", List.of(new VersionInfo("1.21.4", 0, "STABLE")));
+        }
+
+        // fetching is latency bound, so every version gets its own virtual thread
+        Map<VersionInfo, Future<Boolean>> fetches = new LinkedHashMap<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            versionsMap.forEach((family, familyVersions) -> {
+                for (VersionInfo version : familyVersions) {
+                    if (version.name().contains("pre") || version.name().contains("rc")) {
+                        continue;
+                    }
+                    fetches.put(version, executor.submit(() -> sourceFetcher.fetchSourcesJar(family, version)));
                 }
             });
         }
+
+        List<VersionInfo> versions = new ArrayList<>();
+        for (Map.Entry<VersionInfo, Future<Boolean>> fetch : fetches.entrySet()) {
+            try {
+                if (fetch.getValue().get()) {
+                    versions.add(fetch.getKey());
+                }
+            } catch (ExecutionException e) {
+                System.err.println("Failed to fetch sources for " + fetch.getKey().name() + ": " + e.getCause());
+            }
+        }
         return versions;
     }
 
     public @NonNull Map<String, List<VersionInfo>> fetchVersions() throws IOException, InterruptedException {
-        try (var client = HttpClient.newHttpClient()) {
-            var request = HttpRequest.newBuilder()
-                    .uri(API_URL)
-                    .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString("{\"query\":\"" + VERSION_REQUEST + "\"}"))
-                    .build();
-            var response = client.send(request, HttpResponse.BodyHandlers.ofString());
-            var code = response.statusCode();
-
-            if (code > 299 || code < 200) {
-                throw new RuntimeException("Could not connect to " + API_URL + " due to: " + response.body());
+        var request = HttpRequest.newBuilder()
+                .uri(API_URL)
+                .timeout(SourceFetcher.REQUEST_TIMEOUT)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"query\":\"" + VERSION_REQUEST + "\"}"))
+                .build();
+        var response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        var code = response.statusCode();
+
+        if (code > 299 || code < 200) {
+            throw new RuntimeException("Could not connect to " + API_URL + " due to: " + response.body());
+        }
+
+        var json = JsonParser.parseString(response.body()).getAsJsonObject();
+        if (json.has("errors")) {
+            throw new RuntimeException("Couldn't fetch versions from " + API_URL + ", reason: " + json.get("errors"));
+        }
+        return json.getAsJsonObject("data")
+                .getAsJsonObject("project")
+                .getAsJsonObject("versions")
+                .getAsJsonArray("nodes")
+                .asList()
+                .stream()
+                .skip(2) // skip 1.7.10 and 1.8.8
+                .map(JsonElement::getAsJsonObject)
+                .collect(Collectors.groupingBy(
+                        v -> v.getAsJsonObject("family").get("key").getAsString(),
+                        LinkedHashMap::new,
+                        Collectors.mapping(
+                                v -> {
+                                    var key = v.get("key").getAsString();
+                                    var build = v.getAsJsonObject("builds").getAsJsonArray("nodes").get(0).getAsJsonObject();
+                                    return new VersionInfo(key, build.get("number").getAsInt(), build.get("channel").getAsString());
+                                },
+                                Collectors.toCollection(ArrayList::new)
+                        )
+                ));
+    }
+
+    /**
+     * Runs the api export for all versions on up to {@code workers} threads.
+     * A failing version is reported and left out of the returned list instead of aborting the whole batch.
+     */
+    public @NonNull List<VersionInfo> generateApiExports(List<VersionInfo> versions, SourceFetcher sourceFetcher, int workers) throws InterruptedException {
+        Map<VersionInfo, Future<?>> results = new LinkedHashMap<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, workers))) {
+            for (VersionInfo version : versions) {
+                results.put(version, executor.submit(() -> {
+                    generateApiExport(version, sourceFetcher.sourcesJar(version));
+                    return null;
+                }));
+            }
+        }
+
+        List<VersionInfo> exported = new ArrayList<>();
+        List<String> failed = new ArrayList<>();
+        for (Map.Entry<VersionInfo, Future<?>> result : results.entrySet()) {
+            try {
+                result.getValue().get();
+                exported.add(result.getKey());
+            } catch (ExecutionException e) {
+                System.err.println("Failed to generate api export for " + result.getKey().name() + ": " + e.getCause());
+                failed.add(result.getKey().name());
             }
+        }
+        if (!failed.isEmpty()) {
+            System.err.println("Skipping versions without api export: " + String.join(", ", failed));
+        }
+        return exported;
+    }
 
-            var json = JsonParser.parseString(response.body()).getAsJsonObject();
-            if (json.has("errors")) {
-                throw new RuntimeException("Couldn't fetch versions from " + API_URL + ", reason: " + json.get("errors"));
+    /**
+     * Exports the api of a version, either from the extracted source tree or, when {@code sourcesJar} is given,
+     * straight from the sources jar without extracting it.
+     */
+    public void generateApiExport(VersionInfo version, @Nullable Path sourcesJar) throws IOException {
+        if (sourcesJar != null) {
+            try (FileSystem jar = FileSystems.newFileSystem(sourcesJar)) {
+                generateApiExport(version, jar.getPath("/"), ExportManifest.hashFile(sourcesJar));
             }
-            return json.getAsJsonObject("data")
-                    .getAsJsonObject("project")
-                    .getAsJsonObject("versions")
-                    .getAsJsonArray("nodes")
-                    .asList()
-                    .stream()
-                    .skip(2) // skip 1.7.10 and 1.8.8
-                    .map(JsonElement::getAsJsonObject)
-                    .collect(Collectors.groupingBy(
-                            v -> v.getAsJsonObject("family").get("key").getAsString(),
-                            LinkedHashMap::new,
-                            Collectors.mapping(
-                                    v -> {
-                                        var key = v.get("key").getAsString();
-                                        var build = v.getAsJsonObject("builds").getAsJsonArray("nodes").get(0).getAsJsonObject();
-                                        return new VersionInfo(key, build.get("number").getAsInt(), build.get("channel").getAsString());
-                                    },
-                                    Collectors.toCollection(ArrayList::new)
-                            )
-                    ));
+        } else {
+            Path sources = Path.of("sources/paper-api-" + version.name());
+            generateApiExport(version, sources, ExportManifest.hashSources(sources));
         }
     }
 
-    public void generateApiExport(VersionInfo version) {
-        // TODO add hash check to prevent rerunning
+    private void generateApiExport(VersionInfo version, Path sources, String sourcesHash) throws IOException {
+        ApiDiffEvents.Export event = new ApiDiffEvents.Export();
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            event.upToDate = !generateApiExport(version, sources, sourcesHash, event);
+        } finally {
+            Metrics.VersionMetrics metrics = Metrics.version(version.name());
+            metrics.exportMillis.addAndGet(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            metrics.exportUpToDate = event.upToDate;
+            metrics.exportBytes.set(event.written);
+            event.version = version.name();
+            event.commit();
+        }
+    }
+
+    /**
+     * @return whether javadoc ran, false if the existing export was still up to date
+     */
+    private boolean generateApiExport(VersionInfo version, Path sources, String sourcesHash, ApiDiffEvents.Export event) throws IOException {
         String packages = "com.destroystokyo.paper:org.bukkit:org.spigotmc";
-        if (Files.isDirectory(Path.of("sources/paper-api-" + version.name() + "/io"))) {
+        if (Files.isDirectory(sources.resolve("io"))) {
             packages += ":io.papermc.paper";
         }
-        execute("--ignore-source-errors", "-public", "-quiet", "-doclet", "dev.minidigger.apidiff.ApiExportDoclet", "--output-file", "output/raw/paper-api-" + version.name() + ".json", "--mc-version", version.name(), "-sourcepath", "sources/paper-api-" + version.name(), "-subpackages", packages);
+        Path outputFile = Path.of("output/raw/paper-api-" + version.name() + ".json");
+        String key = ExportManifest.key(sourcesHash, packages);
+        if (exportManifest.isUpToDate(version, key)) {
+            System.out.println("Api export for " + version.name() + " is up to date");
+            return false;
+        }
+
+        System.out.println("Generating api export for " + version.name());
+        // the doclet streams its output, so a run that fails partway must not leave a truncated export behind
+        Path tmpFile = outputFile.resolveSibling(outputFile.getFileName() + ".tmp");
+        Files.deleteIfExists(tmpFile);
+        Files.deleteIfExists(ApiExportDoclet.statsFile(tmpFile));
+        DocumentationTool javadoc = ToolProvider.getSystemDocumentationTool();
+        try (StandardJavaFileManager fileManager = javadoc.getStandardFileManager(null, null, null)) {
+            // javac reads the source path through nio, so this works for zip file systems as well
+            fileManager.setLocationFromPaths(StandardLocation.SOURCE_PATH, List.of(sources));
+            List<String> options = List.of("--ignore-source-errors", "-public", "-quiet", "--output-file", tmpFile.toString(), "--mc-version", version.name(), "-subpackages", packages);
+            boolean success = javadoc.getTask(null, fileManager, null, ApiExportDoclet.class, options, null).call();
+            if (!success || !Files.isRegularFile(tmpFile)) {
+                Files.deleteIfExists(tmpFile);
+                throw new IllegalStateException("javadoc " + (success ? "succeeded without writing " + tmpFile : "failed") + " for " + version.name());
+            }
+        }
+        Files.move(tmpFile, outputFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (Files.isRegularFile(ApiExportDoclet.statsFile(tmpFile))) {
+            Files.move(ApiExportDoclet.statsFile(tmpFile), ApiExportDoclet.statsFile(outputFile), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        event.written = Files.size(outputFile);
+        Path statsFile = ApiExportDoclet.statsFile(outputFile);
+        if (Files.isRegularFile(statsFile)) {
+            JsonElement stats = JsonParser.parseString(Files.readString(statsFile));
+            Metrics.version(version.name()).scanFailures = stats.getAsJsonObject().get("failureCount").getAsInt();
+        }
+        exportManifest.put(version, key, outputFile);
+        return true;
     }
 }
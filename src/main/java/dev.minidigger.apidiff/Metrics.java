@@ -0,0 +1,98 @@
+package dev.minidigger.apidiff;
+
+import com.google.gson.GsonBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of a run, per version, per diff and for the written site. Main writes them as json when the run is done,
+ * so a nightly run that got slower can be traced to a version or a stage without a profiler.
+ */
+public final class Metrics {
+
+    private static final Map<String, VersionMetrics> VERSIONS = new ConcurrentSkipListMap<>(HtmlGenerator::compareVersionAware);
+    private static final Map<String, DiffMetrics> DIFFS = new ConcurrentSkipListMap<>(HtmlGenerator::compareVersionAware);
+    private static final AtomicLong PAGES_WRITTEN = new AtomicLong();
+    private static final AtomicLong BYTES_WRITTEN = new AtomicLong();
+
+    private Metrics() {
+    }
+
+    public static VersionMetrics version(String version) {
+        return VERSIONS.computeIfAbsent(version, v -> new VersionMetrics());
+    }
+
+    public static void diff(String versionA, String versionB, long nanos, ApiDiffer.ApiDiff diff) {
+        DIFFS.put(versionA + "-" + versionB, new DiffMetrics(TimeUnit.NANOSECONDS.toMillis(nanos),
+                diff.packagesAdded().size(), diff.packagesRemoved().size(), diff.packagesChanged().size(),
+                diff.classesAdded().size(), diff.classesRemoved().size(), diff.classesChanged().size(),
+                diff.membersAdded().values().stream().mapToInt(List::size).sum(),
+                diff.membersRemoved().values().stream().mapToInt(List::size).sum(),
+                diff.membersChanged().values().stream().mapToInt(List::size).sum()));
+    }
+
+    public static void pageWritten(Path page, long bytes) {
+        PAGES_WRITTEN.incrementAndGet();
+        BYTES_WRITTEN.addAndGet(bytes);
+
+        ApiDiffEvents.Render event = new ApiDiffEvents.Render();
+        event.page = page.getFileName().toString();
+        event.written = bytes;
+        event.commit();
+    }
+
+    public static void pageWritten(Path page) throws IOException {
+        pageWritten(page, Files.size(page));
+    }
+
+    public static void write(Path file, List<StageTimer.Stage> stages, LruCache.Stats exports) throws IOException {
+        Map<String, Object> result = new LinkedHashMap<>();
+        List<Map<String, Object>> stageList = new ArrayList<>();
+        for (StageTimer.Stage stage : stages) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("name", stage.name());
+            entry.put("wallMillis", TimeUnit.NANOSECONDS.toMillis(stage.wallNanos()));
+            entry.put("cpuMillis", TimeUnit.NANOSECONDS.toMillis(stage.cpuNanos()));
+            entry.put("peakRssBytes", stage.peakRssBytes());
+            stageList.add(entry);
+        }
+        result.put("stages", stageList);
+        result.put("versions", VERSIONS);
+        result.put("diffs", DIFFS);
+        result.put("exports", exports);
+        result.put("pagesWritten", PAGES_WRITTEN.get());
+        result.put("bytesWritten", BYTES_WRITTEN.get());
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, new GsonBuilder().setPrettyPrinting().create().toJson(result));
+    }
+
+    public static final class VersionMetrics {
+        public final AtomicLong fetchMillis = new AtomicLong();
+        public final AtomicLong bytesDownloaded = new AtomicLong();
+        public final AtomicLong exportMillis = new AtomicLong();
+        public volatile boolean exportUpToDate;
+        public final AtomicLong exportBytes = new AtomicLong();
+        // scan failures the doclet swallowed, the details are in the export's .stats.json
+        public volatile int scanFailures;
+        public final AtomicLong loadMillis = new AtomicLong();
+        public final AtomicLong loads = new AtomicLong();
+        public volatile int packages;
+        public volatile int classes;
+        public volatile int members;
+    }
+
+    public record DiffMetrics(long millis,
+                              int packagesAdded, int packagesRemoved, int packagesChanged,
+                              int classesAdded, int classesRemoved, int classesChanged,
+                              int membersAdded, int membersRemoved, int membersChanged) {
+    }
+}
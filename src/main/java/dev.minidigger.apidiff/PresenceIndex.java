@@ -0,0 +1,262 @@
+package dev.minidigger.apidiff;
+
+import dev.minidigger.apidiff.ApiDiffer.ApiDiff;
+import dev.minidigger.apidiff.ApiDiffer.ApiExport;
+import dev.minidigger.apidiff.ApiDiffer.Class;
+import dev.minidigger.apidiff.ApiDiffer.Member;
+import dev.minidigger.apidiff.ApiDiffer.Package;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * For every package, class and member of all versions, the versions it exists in and the versions it changed in.
+ * Bit {@code i} stands for {@code versions.get(i)}, so any two versions can be compared without loading their exports.
+ */
+public class PresenceIndex {
+
+    private final List<VersionInfo> versions;
+    private final SymbolTable symbols;
+    private final Map<String, Presence> packages = new Object2ObjectOpenHashMap<>();
+    private final Map<String, Presence> classes = new Object2ObjectOpenHashMap<>();
+    // keyed by SymbolTable#memberKey
+    private final Long2ObjectMap<Presence> members = new Long2ObjectOpenHashMap<>();
+
+    private PresenceIndex(List<VersionInfo> versions, SymbolTable symbols) {
+        this.versions = versions;
+        this.symbols = symbols;
+    }
+
+    /**
+     * Walks all versions once, oldest first. Only the current and the previous export are needed at any time.
+     */
+    public static PresenceIndex build(List<VersionInfo> versions, ApiDiffer apiDiffer) {
+        PresenceIndex index = new PresenceIndex(versions, apiDiffer.symbols);
+        ApiExport previous = null;
+        for (int i = 0; i < versions.size(); i++) {
+            ApiExport export = apiDiffer.load(versions.get(i));
+            for (Package aPackage : export.packages().values()) {
+                String name = aPackage.name();
+                boolean changed = previous != null && previous.packages().containsKey(name)
+                        && previous.packageHashes().getLong(name) != export.packageHashes().getLong(name);
+                index.packages.computeIfAbsent(name, k -> new Presence()).set(i, changed, aPackage.linkPath());
+            }
+            for (Class aClass : export.classes().values()) {
+                String name = aClass.name();
+                // like ApiDiffer#diffClass, a class only changed if its own members did, the class hash
+                // also covers the inner classes and the api status of the class itself
+                Class previousClass = previous == null ? null : previous.classes().get(name);
+                boolean changed = previousClass != null && !previousClass.members().equals(aClass.members());
+                index.classes.computeIfAbsent(name, k -> new Presence()).set(i, changed, aClass.linkPath());
+            }
+            for (Long2ObjectMap.Entry<Member> entry : export.members().long2ObjectEntrySet()) {
+                Member previousMember = previous == null ? null : previous.members().get(entry.getLongKey());
+                boolean changed = previousMember != null && !previousMember.equals(entry.getValue());
+                index.members.computeIfAbsent(entry.getLongKey(), k -> new Presence()).set(i, changed, entry.getValue().linkPath());
+            }
+            previous = export;
+        }
+        return index;
+    }
+
+    public List<VersionInfo> versions() {
+        return versions;
+    }
+
+    /**
+     * Diffs any two versions, not just adjacent ones, by scanning the bitsets of the index.
+     * Something counts as changed if it exists in both versions and changed in any version in between.
+     */
+    public PresenceDiff diff(VersionInfo versionA, VersionInfo versionB) {
+        int a = indexOf(versionA);
+        int b = indexOf(versionB);
+
+        PresenceDiff diff = new PresenceDiff(versionA.name(), versionB.name(),
+                new ArrayList<>(), new ArrayList<>(), new ArrayList<>(),
+                new ArrayList<>(), new ArrayList<>(), new ArrayList<>(),
+                new TreeMap<>(), new TreeMap<>(), new TreeMap<>());
+        for (Map.Entry<String, Presence> entry : packages.entrySet()) {
+            switch (entry.getValue().compare(a, b)) {
+                case ADDED -> diff.packagesAdded.add(entry.getKey());
+                case REMOVED -> diff.packagesRemoved.add(entry.getKey());
+                case CHANGED -> diff.packagesChanged.add(entry.getKey());
+                case null -> {
+                }
+            }
+        }
+        for (Map.Entry<String, Presence> entry : classes.entrySet()) {
+            switch (entry.getValue().compare(a, b)) {
+                case ADDED -> diff.classesAdded.add(entry.getKey());
+                case REMOVED -> diff.classesRemoved.add(entry.getKey());
+                case CHANGED -> diff.classesChanged.add(entry.getKey());
+                case null -> {
+                }
+            }
+        }
+        for (Long2ObjectMap.Entry<Presence> entry : members.long2ObjectEntrySet()) {
+            Map<String, List<String>> target = switch (entry.getValue().compare(a, b)) {
+                case ADDED -> diff.membersAdded;
+                case REMOVED -> diff.membersRemoved;
+                case CHANGED -> diff.membersChanged;
+                case null -> null;
+            };
+            if (target != null) {
+                long key = entry.getLongKey();
+                target.computeIfAbsent(symbols.memberClass(key), k -> new ArrayList<>()).add(symbols.memberSignature(key));
+            }
+        }
+
+        diff.packagesAdded.sort(null);
+        diff.packagesRemoved.sort(null);
+        diff.packagesChanged.sort(null);
+        diff.classesAdded.sort(null);
+        diff.classesRemoved.sort(null);
+        diff.classesChanged.sort(null);
+        diff.membersAdded.values().forEach(list -> list.sort(null));
+        diff.membersRemoved.values().forEach(list -> list.sort(null));
+        diff.membersChanged.values().forEach(list -> list.sort(null));
+        return diff;
+    }
+
+    /**
+     * {@link #diff(VersionInfo, VersionInfo)} as an {@link ApiDiff} that can be rendered like the adjacent ones.
+     * The elements only carry their name and link, added and changed ones link to version b, removed ones to version a.
+     */
+    public ApiDiff apiDiff(VersionInfo versionA, VersionInfo versionB) {
+        PresenceDiff diff = diff(versionA, versionB);
+        return new ApiDiff(versionA, versionB,
+                packages(diff.packagesAdded, versionB), packages(diff.packagesRemoved, versionA), packages(diff.packagesChanged, versionB),
+                classes(diff.classesAdded, versionB), classes(diff.classesRemoved, versionA), classes(diff.classesChanged, versionB),
+                members(diff.membersAdded, versionB), members(diff.membersRemoved, versionA), members(diff.membersChanged, versionB));
+    }
+
+    private List<Package> packages(List<String> names, VersionInfo version) {
+        List<Package> result = new ArrayList<>(names.size());
+        for (String name : names) {
+            result.add(new Package(name, List.of(), null, version, packages.get(name).linkPath));
+        }
+        return result;
+    }
+
+    private List<Class> classes(List<String> names, VersionInfo version) {
+        List<Class> result = new ArrayList<>(names.size());
+        for (String name : names) {
+            result.add(new Class(name, List.of(), List.of(), null, version, classes.get(name).linkPath));
+        }
+        return result;
+    }
+
+    private Map<String, List<Member>> members(Map<String, List<String>> signatures, VersionInfo version) {
+        Map<String, List<Member>> result = new LinkedHashMap<>();
+        signatures.forEach((className, classSignatures) -> {
+            Class parent = classes(List.of(className), version).getFirst();
+            List<Member> members = new ArrayList<>(classSignatures.size());
+            for (String signature : classSignatures) {
+                members.add(new Member(signature, null, null, null, parent, memberPresence(className, signature).linkPath));
+            }
+            result.put(className, members);
+        });
+        return result;
+    }
+
+    public Presence packagePresence(String name) {
+        return packages.get(name);
+    }
+
+    public Presence classPresence(String name) {
+        return classes.get(name);
+    }
+
+    public Presence memberPresence(String className, String signature) {
+        return members.get(symbols.memberKey(className, signature));
+    }
+
+    public Map<String, Presence> packages() {
+        return packages;
+    }
+
+    public Map<String, Presence> classes() {
+        return classes;
+    }
+
+    public Long2ObjectMap<Presence> members() {
+        return members;
+    }
+
+    private int indexOf(VersionInfo version) {
+        for (int i = 0; i < versions.size(); i++) {
+            if (versions.get(i).name().equals(version.name())) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown version " + version.name());
+    }
+
+    /**
+     * Versions a single element exists in and, of those, the ones it changed in compared to the version before.
+     */
+    public static final class Presence {
+        private final BitSet present = new BitSet();
+        private final BitSet changed = new BitSet();
+        // version independent, see SymbolTable#linkPath, the one of the latest version it exists in
+        private String linkPath;
+
+        private void set(int version, boolean changedInVersion, String linkPath) {
+            this.linkPath = linkPath;
+            present.set(version);
+            if (changedInVersion) {
+                changed.set(version);
+            }
+        }
+
+        public int firstSeen() {
+            return present.nextSetBit(0);
+        }
+
+        public int lastSeen() {
+            return present.length() - 1;
+        }
+
+        /**
+         * @return the index of the version it got removed in, or -1 if it still exists in the latest version
+         */
+        public int removedIn(int latest) {
+            int lastSeen = lastSeen();
+            return lastSeen < latest ? lastSeen + 1 : -1;
+        }
+
+        private Change compare(int a, int b) {
+            boolean inA = present.get(a);
+            boolean inB = present.get(b);
+            if (!inA && inB) {
+                return Change.ADDED;
+            } else if (inA && !inB) {
+                return Change.REMOVED;
+            } else if (inA) {
+                int nextChange = changed.nextSetBit(Math.min(a, b) + 1);
+                if (nextChange != -1 && nextChange <= Math.max(a, b)) {
+                    return Change.CHANGED;
+                }
+            }
+            return null;
+        }
+    }
+
+    private enum Change {
+        ADDED, REMOVED, CHANGED
+    }
+
+    public record PresenceDiff(String versionA, String versionB,
+                               List<String> packagesAdded, List<String> packagesRemoved, List<String> packagesChanged,
+                               List<String> classesAdded, List<String> classesRemoved, List<String> classesChanged,
+                               Map<String, List<String>> membersAdded, Map<String, List<String>> membersRemoved,
+                               Map<String, List<String>> membersChanged) {
+    }
+}
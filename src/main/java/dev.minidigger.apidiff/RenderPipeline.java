@@ -0,0 +1,94 @@
+package dev.minidigger.apidiff;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Renders pages on a bounded pool while a single writer thread flushes the finished pages to disk,
+ * so rendering overlaps with file io and with whatever the caller does next.
+ * At most {@code 2 * workers} pages are queued, rendering or waiting for the writer, {@link #submit} blocks beyond that.
+ */
+public class RenderPipeline implements AutoCloseable {
+
+    private final ExecutorService renderers;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+    private final Semaphore pending;
+    private final List<CompletableFuture<Void>> pages = new ArrayList<>();
+
+    public RenderPipeline(int workers) {
+        this.renderers = Executors.newFixedThreadPool(Math.max(1, workers));
+        this.pending = new Semaphore(Math.max(1, workers) * 2);
+    }
+
+    public void submit(Path file, Renderer renderer) {
+        // taken on the caller's thread, so a caller faster than the renderers waits here
+        // instead of piling up renderers and their diffs in the queue of the pool
+        pending.acquireUninterruptibly();
+        CompletableFuture<Void> page = CompletableFuture.supplyAsync(() -> {
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (Writer out = new OutputStreamWriter(bytes, StandardCharsets.UTF_8)) {
+                    renderer.render(out);
+                }
+                return bytes.toByteArray();
+            } catch (IOException | RuntimeException e) {
+                pending.release();
+                throw e instanceof IOException io ? new UncheckedIOException(io) : (RuntimeException) e;
+            }
+        }, renderers).thenAcceptAsync(bytes -> {
+            try {
+                Files.write(file, bytes);
+                Metrics.pageWritten(file, bytes.length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                pending.release();
+            }
+        }, writer);
+        synchronized (pages) {
+            pages.add(page);
+        }
+    }
+
+    /**
+     * Waits until every submitted page is on disk, rethrowing the first failure.
+     */
+    public void await() throws IOException {
+        List<CompletableFuture<Void>> submitted;
+        synchronized (pages) {
+            submitted = new ArrayList<>(pages);
+        }
+        try {
+            CompletableFuture.allOf(submitted.toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    @Override
+    public void close() {
+        renderers.close();
+        writer.close();
+    }
+
+    @FunctionalInterface
+    public interface Renderer {
+        void render(Writer out) throws IOException;
+    }
+}
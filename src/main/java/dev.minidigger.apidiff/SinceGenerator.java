@@ -3,95 +3,111 @@ package dev.minidigger.apidiff;
 import com.google.common.collect.*;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonSerializer;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 public class SinceGenerator {
 
     private final List<VersionInfo> versions;
     private final ApiDiffer apiDiffer;
+    private final Path output;
 
     public SinceGenerator(List<VersionInfo> versions, ApiDiffer apiDiffer) {
+        this(versions, apiDiffer, Path.of("output/raw/since.json"));
+    }
+
+    public SinceGenerator(List<VersionInfo> versions, ApiDiffer apiDiffer, Path output) {
         this.versions = versions;
         this.apiDiffer = apiDiffer;
+        this.output = output;
     }
 
     public SinceReport generate() throws Exception {
+        ApiDiffEvents.Since event = new ApiDiffEvents.Since();
+        event.begin();
+        PresenceIndex index = PresenceIndex.build(versions, apiDiffer);
+
         Map<String, String> packages = new LinkedHashMap<>();
         Map<String, String> classes = new LinkedHashMap<>();
         Table<String, String, String> members = TreeBasedTable.create();
 
+        // the index was built oldest first, so the latest export is still loaded
         ApiDiffer.ApiExport lastExport = apiDiffer.load(versions.getLast());
         for (ApiDiffer.Package aPackage : lastExport.packages().values()) {
-            packages.put(aPackage.name(), packetSince(aPackage));
+            packages.put(aPackage.name(), since(index.packagePresence(aPackage.name())));
             for (ApiDiffer.Class aClass : aPackage.classes()) {
-                classes.put(aClass.name(), classSince(aClass));
+                classes.put(aClass.name(), since(index.classPresence(aClass.name())));
                 for (ApiDiffer.Member member : aClass.members()) {
-                    members.put(aClass.name(), member.name(), memberSince(member));
+                    members.put(aClass.name(), member.name(), since(index.memberPresence(aClass.name(), member.name())));
                 }
                 for (ApiDiffer.Class innerClass : aClass.innerClasses()) {
-                    classes.put(innerClass.name(), classSince(innerClass));
+                    classes.put(innerClass.name(), since(index.classPresence(innerClass.name())));
                     for (ApiDiffer.Member member : innerClass.members()) {
-                        members.put(innerClass.name(), member.name(), memberSince(member));
+                        members.put(innerClass.name(), member.name(), since(index.memberPresence(innerClass.name(), member.name())));
                     }
                 }
             }
         }
 
-        SinceReport report = new SinceReport(packages, classes, members);
+        // everything missing from the latest version got removed in the version after it was last seen
+        int latest = versions.size() - 1;
+        Map<String, String> removedPackages = new TreeMap<>();
+        index.packages().forEach((name, presence) -> {
+            int removedIn = presence.removedIn(latest);
+            if (removedIn != -1) {
+                removedPackages.put(name, versions.get(removedIn).name());
+            }
+        });
+        Map<String, String> removedClasses = new TreeMap<>();
+        index.classes().forEach((name, presence) -> {
+            int removedIn = presence.removedIn(latest);
+            if (removedIn != -1) {
+                removedClasses.put(name, versions.get(removedIn).name());
+            }
+        });
+        Table<String, String, String> removedMembers = TreeBasedTable.create();
+        for (Long2ObjectMap.Entry<PresenceIndex.Presence> entry : index.members().long2ObjectEntrySet()) {
+            int removedIn = entry.getValue().removedIn(latest);
+            if (removedIn != -1) {
+                long key = entry.getLongKey();
+                removedMembers.put(apiDiffer.symbols.memberClass(key), apiDiffer.symbols.memberSignature(key), versions.get(removedIn).name());
+            }
+        }
+
+        SinceReport report = new SinceReport(packages, classes, members, removedPackages, removedClasses, removedMembers);
         String json = new GsonBuilder()
                 .setPrettyPrinting()
                 .registerTypeAdapter(Table.class, (JsonSerializer<Table<?, ?, ?>>) (table, type, context) -> context.serialize(table.rowMap()))
                 .create()
                 .toJson(report);
-        Files.writeString(Path.of("output/raw/since.json"), json);
-        return report;
-    }
+        Files.writeString(output, json);
 
-    private String packetSince(ApiDiffer.Package aPackage) {
-        for (VersionInfo version : versions) {
-            ApiDiffer.ApiExport export = apiDiffer.load(version);
-            if (export.packages().containsKey(aPackage.name())) {
-                if (version.equals(versions.getFirst())) {
-                    return "basically forever";
-                }
-                return version.name();
-            }
-        }
-        return "forever";
-    }
-
-    private String classSince(ApiDiffer.Class aClass) {
-        for (VersionInfo version : versions) {
-            ApiDiffer.ApiExport export = apiDiffer.load(version);
-            if (export.classes().containsKey(aClass.name())) {
-                if (version.equals(versions.getFirst())) {
-                    return "basically forever";
-                }
-                return version.name();
-            }
-        }
-        return "forever";
+        event.versions = versions.size();
+        event.members = index.members().size();
+        event.commit();
+        return report;
     }
 
-    private String memberSince(ApiDiffer.Member member) {
-        for (VersionInfo version : versions) {
-            ApiDiffer.ApiExport export = apiDiffer.load(version);
-            if (export.members().containsKey(member.name())) {
-                if (version.equals(versions.getFirst())) {
-                    return "basically forever";
-                }
-                return version.name();
-            }
+    private String since(PresenceIndex.Presence presence) {
+        int firstSeen = presence.firstSeen();
+        if (firstSeen == 0) {
+            return "basically forever";
         }
-        return "forever";
+        return versions.get(firstSeen).name();
     }
 
+    /**
+     * @param removedPackages elements missing from the latest version, mapped to the version they were removed in
+     */
     public record SinceReport(Map<String, String> packages, Map<String, String> classes,
-                              Table<String, String, String> members) {
+                              Table<String, String, String> members,
+                              Map<String, String> removedPackages, Map<String, String> removedClasses,
+                              Table<String, String, String> removedMembers) {
     }
 }
@@ -0,0 +1,100 @@
+package dev.minidigger.apidiff;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Remembers the fingerprint of the inputs of every generated page, so pages whose inputs didn't change aren't rendered again.
+ * It also is the list of pages the site currently consists of, which the index is built from.
+ */
+public class SiteManifest {
+
+    private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+    private final Path file;
+    private final Map<String, String> pages = new TreeMap<>();
+
+    public SiteManifest(Path file) {
+        this.file = file;
+        if (Files.isRegularFile(file)) {
+            try (Reader reader = Files.newBufferedReader(file)) {
+                Map<String, String> loaded = gson.fromJson(reader, TypeToken.getParameterized(Map.class, String.class, String.class).getType());
+                if (loaded != null) {
+                    pages.putAll(loaded);
+                }
+            } catch (Exception e) {
+                System.err.println("Ignoring unreadable site manifest " + file + ": " + e);
+            }
+        }
+    }
+
+    /**
+     * @param outputs the files the page consists of, all of them need to still exist
+     */
+    public synchronized boolean isUpToDate(String page, @Nullable String fingerprint, Path... outputs) {
+        if (fingerprint == null || !fingerprint.equals(pages.get(page))) {
+            return false;
+        }
+        for (Path output : outputs) {
+            if (!Files.isRegularFile(output)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records the pages rendered in this run and forgets the ones that are no longer part of the site.
+     */
+    public synchronized void update(Map<String, String> rendered, Collection<String> currentPages) throws IOException {
+        pages.putAll(rendered);
+        pages.keySet().retainAll(currentPages);
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(tmp, gson.toJson(pages));
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * The version pairs of all diff pages, e.g. {@code 1.21.3-1.21.4}.
+     */
+    public synchronized List<String> diffs() {
+        return pages.keySet().stream()
+                .filter(page -> page.startsWith("diff-"))
+                .map(page -> page.substring("diff-".length()))
+                .toList();
+    }
+
+    /**
+     * Hashes the export keys a page is built from together with the page layout version.
+     *
+     * @return null if any of the inputs is unknown, the page then always gets rendered
+     */
+    public static @Nullable String fingerprint(String page, List<@Nullable String> inputs) {
+        MessageDigest digest = ExportManifest.sha256();
+        digest.update(("layout:" + HtmlGenerator.VERSION + "\n").getBytes(StandardCharsets.UTF_8));
+        digest.update(("page:" + page + "\n").getBytes(StandardCharsets.UTF_8));
+        for (String input : inputs) {
+            if (input == null) {
+                return null;
+            }
+            digest.update(("input:" + input + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
@@ -1,23 +1,49 @@
 package dev.minidigger.apidiff;
 
+import org.jspecify.annotations.Nullable;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
-import javax.net.ssl.HttpsURLConnection;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
-import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.net.URI;
-import java.net.URL;
-import java.net.URLConnection;
+import java.net.http.HttpClient;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
 public class SourceFetcher {
+    static final String USER_AGENT = "api-diff/1.0 <https://github.com/MiniDigger/api-diff/>";
+    // without these a stalled connection blocks its fetch thread forever; with them it fails with an
+    // HttpTimeoutException, which is an IOException and goes through the normal retry and backoff
+    static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(30);
+    static final Duration REQUEST_TIMEOUT = Duration.ofMinutes(5);
+
+    private final ArtifactCache artifactCache;
+    private final boolean extractSources;
+    private final Map<String, Path> sourcesJars = new ConcurrentHashMap<>();
+
+    public SourceFetcher(HttpClient client, int maxConnectionsPerHost, boolean extractSources) {
+        this.artifactCache = new ArtifactCache(Path.of("cache/artifacts"), client, maxConnectionsPerHost);
+        this.extractSources = extractSources;
+    }
+
+    /**
+     * Returns the sources jar javadoc should read for this version, or null if it uses the extracted source tree.
+     */
+    public @Nullable Path sourcesJar(VersionInfo version) {
+        return sourcesJars.get(version.name());
+    }
 
     private boolean isVersionNew(String family) {
         var parts = family.split("\\.");
@@ -26,14 +52,28 @@ public class SourceFetcher {
     }
 
     public boolean fetchSourcesJar(String family, VersionInfo version) throws Exception {
-        // TODO add hash check to prevent redownloading
+        ApiDiffEvents.Fetch event = new ApiDiffEvents.Fetch();
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            return fetchSourcesJar(family, version, event);
+        } finally {
+            Metrics.VersionMetrics metrics = Metrics.version(version.name());
+            metrics.fetchMillis.addAndGet(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            metrics.bytesDownloaded.addAndGet(event.downloaded);
+            event.version = version.name();
+            event.commit();
+        }
+    }
+
+    private boolean fetchSourcesJar(String family, VersionInfo version, ApiDiffEvents.Fetch event) throws Exception {
         System.out.println("Fetching sources for " + version.name());
 
         // Versions >=26.1 do not have metadata xml files
         String sourcesUrl;
         if (!isVersionNew(family)) {
             String metadataUrl = version.metadataUrl(family);
-            String snapshotVersion = getLatestSnapshotVersion(metadataUrl);
+            String snapshotVersion = getLatestSnapshotVersion(metadataUrl, event);
             if (snapshotVersion == null) {
                 System.err.println("Could not find snapshot version for " + version.name());
                 return false;
@@ -43,17 +83,30 @@ public class SourceFetcher {
             sourcesUrl = version.sourcesUrl(family, "");
         }
 
-        downloadAndExtractSourcesToDisk(sourcesUrl, Path.of("sources/paper-api-" + version.name()));
+        Path outputDir = Path.of("sources/paper-api-" + version.name());
+        ArtifactCache.Artifact sourcesJar = artifactCache.fetch(sourcesUrl);
+        event.downloaded += sourcesJar.downloaded();
+        if (!extractSources) {
+            sourcesJars.put(version.name(), sourcesJar.file());
+            return true;
+        }
+        if (!sourcesJar.changed() && Files.isDirectory(outputDir)) {
+            System.out.println("Sources for " + version.name() + " are up to date");
+            return true;
+        }
+
+        extractSourcesToDisk(sourcesJar.file(), outputDir);
         return true;
     }
 
     public String getLatestSnapshotVersion(String metadataUrl) throws Exception {
-        URL url = new URI(metadataUrl).toURL();
-        URLConnection urlConnection = url.openConnection();
-        if (urlConnection instanceof HttpsURLConnection httpsURLConnection) {
-            httpsURLConnection.setRequestProperty("User-Agent", "api-diff/1.0 <https://github.com/MiniDigger/api-diff/>");
-        }
-        try (InputStream inputStream = urlConnection.getInputStream()) {
+        return getLatestSnapshotVersion(metadataUrl, new ApiDiffEvents.Fetch());
+    }
+
+    private String getLatestSnapshotVersion(String metadataUrl, ApiDiffEvents.Fetch event) throws Exception {
+        ArtifactCache.Artifact metadata = artifactCache.fetch(metadataUrl);
+        event.downloaded += metadata.downloaded();
+        try (InputStream inputStream = Files.newInputStream(metadata.file())) {
             DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
             DocumentBuilder builder = factory.newDocumentBuilder();
             Document document = builder.parse(inputStream);
@@ -81,23 +134,28 @@ public class SourceFetcher {
         return null;
     }
 
-    public void downloadAndExtractSourcesToDisk(String sourcesUrl, Path outputDir) throws Exception {
-        URL url = new URI(sourcesUrl).toURL();
-        try (ZipInputStream zipInputStream = new ZipInputStream(url.openStream())) {
+    public void extractSourcesToDisk(Path sourcesJar, Path outputDir) throws IOException {
+        // start from a clean tree, so classes removed upstream don't linger around
+        if (Files.isDirectory(outputDir)) {
+            try (Stream<Path> walk = Files.walk(outputDir)) {
+                for (Path path : walk.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+
+        try (ZipInputStream zipInputStream = new ZipInputStream(Files.newInputStream(sourcesJar))) {
             ZipEntry entry;
             while ((entry = zipInputStream.getNextEntry()) != null) {
-                Path filePath = outputDir.resolve(entry.getName());
+                Path filePath = outputDir.resolve(entry.getName()).normalize();
+                if (!filePath.startsWith(outputDir)) {
+                    throw new IOException("Bad zip entry " + entry.getName() + " in " + sourcesJar);
+                }
                 if (entry.isDirectory()) {
                     Files.createDirectories(filePath);
                 } else {
                     Files.createDirectories(filePath.getParent());
-                    try (FileOutputStream outputStream = new FileOutputStream(filePath.toFile())) {
-                        byte[] buffer = new byte[1024];
-                        int len;
-                        while ((len = zipInputStream.read(buffer)) > 0) {
-                            outputStream.write(buffer, 0, len);
-                        }
-                    }
+                    Files.copy(zipInputStream, filePath, StandardCopyOption.REPLACE_EXISTING);
                 }
                 zipInputStream.closeEntry();
             }
@@ -0,0 +1,102 @@
+package dev.minidigger.apidiff;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the stages of a run: wall time, cpu time of the whole process (all threads) and the peak rss during the stage.
+ * Stages are expected to run one after another, starting one resets the peak rss of the process.
+ */
+public class StageTimer {
+
+    private final List<Stage> stages = new ArrayList<>();
+
+    /**
+     * Starts measuring a stage, it ends when the returned handle is closed.
+     */
+    public Running start(String name) {
+        boolean peakRssReset = resetPeakRss();
+        return new Running(name, System.nanoTime(), processCpuTime(), peakRssReset);
+    }
+
+    public List<Stage> stages() {
+        synchronized (stages) {
+            return List.copyOf(stages);
+        }
+    }
+
+    public void print() {
+        System.out.printf("%-10s %10s %10s %10s%n", "stage", "wall ms", "cpu ms", "peak rss");
+        for (Stage stage : stages()) {
+            System.out.printf("%-10s %10d %10d %10s%n", stage.name(), stage.wallNanos() / 1_000_000, stage.cpuNanos() / 1_000_000,
+                    stage.peakRssBytes() < 0 ? "n/a" : stage.peakRssBytes() / (1024 * 1024) + " MiB");
+        }
+    }
+
+    private static long processCpuTime() {
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os) {
+            return os.getProcessCpuTime();
+        }
+        return 0;
+    }
+
+    /**
+     * Sets the high water mark of the resident set back to the current rss, linux 4.0 and later.
+     */
+    private static boolean resetPeakRss() {
+        try {
+            Files.writeString(Path.of("/proc/self/clear_refs"), "5");
+            return true;
+        } catch (IOException ignored) {
+            // not on linux
+            return false;
+        }
+    }
+
+    /**
+     * The high water mark of the resident set, only known on linux.
+     */
+    private static long peakRss() {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.substring("VmHWM:".length()).replace("kB", "").trim()) * 1024;
+                }
+            }
+        } catch (IOException | NumberFormatException ignored) {
+            // not on linux
+        }
+        return -1;
+    }
+
+    public final class Running implements AutoCloseable {
+        private final String name;
+        private final long wallStart;
+        private final long cpuStart;
+        private final boolean peakRssReset;
+
+        private Running(String name, long wallStart, long cpuStart, boolean peakRssReset) {
+            this.name = name;
+            this.wallStart = wallStart;
+            this.cpuStart = cpuStart;
+            this.peakRssReset = peakRssReset;
+        }
+
+        @Override
+        public void close() {
+            // without the reset it would be the peak of the whole process so far, not of this stage
+            long peakRss = peakRssReset ? peakRss() : -1;
+            Stage stage = new Stage(name, System.nanoTime() - wallStart, processCpuTime() - cpuStart, peakRss);
+            synchronized (stages) {
+                stages.add(stage);
+            }
+        }
+    }
+
+    public record Stage(String name, long wallNanos, long cpuNanos, long peakRssBytes) {
+    }
+}
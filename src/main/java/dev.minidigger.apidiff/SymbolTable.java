@@ -0,0 +1,74 @@
+package dev.minidigger.apidiff;
+
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+/**
+ * Pool of the names, signatures and link paths of all loaded exports.
+ * Every distinct string is kept once, shared between versions, and gets a dense int id.
+ */
+public final class SymbolTable {
+
+    private static final String LINK_PREFIX = "https://jd.papermc.io/paper/";
+
+    private final Object2IntOpenHashMap<String> ids = new Object2IntOpenHashMap<>();
+    private final ObjectArrayList<String> strings = new ObjectArrayList<>();
+
+    public SymbolTable() {
+        ids.defaultReturnValue(-1);
+    }
+
+    public synchronized int id(String s) {
+        int id = ids.getInt(s);
+        if (id == -1) {
+            id = strings.size();
+            strings.add(s);
+            ids.put(s, id);
+        }
+        return id;
+    }
+
+    public synchronized String intern(String s) {
+        return s == null ? null : strings.get(id(s));
+    }
+
+    public synchronized String string(int id) {
+        return strings.get(id);
+    }
+
+    /**
+     * Packs the ids of the owning class and the signature into the identity of a member across all versions.
+     */
+    public long memberKey(String className, String signature) {
+        return ((long) id(className) << 32) | (id(signature) & 0xFFFFFFFFL);
+    }
+
+    public String memberClass(long memberKey) {
+        return string((int) (memberKey >>> 32));
+    }
+
+    public String memberSignature(long memberKey) {
+        return string((int) memberKey);
+    }
+
+    /**
+     * Strips the version specific prefix of a javadoc link, so the remaining path can be shared between versions.
+     */
+    public String linkPath(VersionInfo version, String link) {
+        String prefix = LINK_PREFIX + version.name() + "/";
+        if (link != null && link.startsWith(prefix)) {
+            return intern(link.substring(prefix.length()));
+        }
+        return intern(link);
+    }
+
+    /**
+     * Inverse of {@link #linkPath(VersionInfo, String)}.
+     */
+    public static String link(VersionInfo version, String linkPath) {
+        if (linkPath == null || linkPath.startsWith("https://")) {
+            return linkPath;
+        }
+        return LINK_PREFIX + version.name() + "/" + linkPath;
+    }
+}
@@ -3,6 +3,8 @@ package dev.minidigger.apidiff;
 import java.util.Locale;
 
 public record VersionInfo(String name, int build, String channel) {
+    private static final String REPO_URL = System.getProperty("apidiff.repoUrl", "https://repo.papermc.io/repository/maven-public/");
+
     private String channelSuffix() {
         return "-" + channel.toLowerCase(Locale.ROOT);
     }
@@ -19,7 +21,7 @@ public record VersionInfo(String name, int build, String channel) {
             group = "com/destroystokyo";
         }
 
-        return "https://repo.papermc.io/repository/maven-public/" + group + "/paper/paper-api/" + name.replace(".0", ".") + "-R0.1-SNAPSHOT/maven-metadata.xml";
+        return REPO_URL + group + "/paper/paper-api/" + name.replace(".0", ".") + "-R0.1-SNAPSHOT/maven-metadata.xml";
     }
 
     public String sourcesUrl(String family, String snapshotVersion) {
@@ -41,6 +43,6 @@ public record VersionInfo(String name, int build, String channel) {
             sourcesName = fullName;
         }
 
-        return "https://repo.papermc.io/repository/maven-public/" + group + "/paper/paper-api/" + fullName + "/paper-api-" + sourcesName + "-sources.jar";
+        return REPO_URL + group + "/paper/paper-api/" + fullName + "/paper-api-" + sourcesName + "-sources.jar";
     }
 }
@@ -0,0 +1,205 @@
+package dev.minidigger.apidiff;
+
+import dev.minidigger.apidiff.ApiDiffer.ApiDiff;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ApiDifferTest {
+
+    private static final String EXPORT_A = """
+            [
+              {
+                "kind": "PACKAGE",
+                "name": "org.bukkit",
+                "children": [
+                  {
+                    "kind": "CLASS",
+                    "name": "org.bukkit.Bukkit",
+                    "children": [
+                      {"kind": "METHOD", "name": "getServer()"}
+                    ]
+                  }
+                ]
+              },
+              {
+                "kind": "PACKAGE",
+                "name": "org.bukkit.entity",
+                "children": [
+                  {
+                    "kind": "INTERFACE",
+                    "name": "org.bukkit.entity.Entity",
+                    "children": [
+                      {"kind": "METHOD", "name": "getLocation()"},
+                      {"kind": "METHOD", "name": "teleport(Location)"}
+                    ]
+                  },
+                  {
+                    "kind": "INTERFACE",
+                    "name": "org.bukkit.entity.Player",
+                    "children": [
+                      {"kind": "METHOD", "name": "getLocation()"},
+                      {"kind": "METHOD", "name": "getName()"},
+                      {"kind": "METHOD", "name": "kick()"},
+                      {"kind": "METHOD", "name": "setHealth(double)"},
+                      {
+                        "kind": "CLASS",
+                        "name": "org.bukkit.entity.Player.Spigot",
+                        "children": [
+                          {"kind": "METHOD", "name": "sendMessage(String)"}
+                        ]
+                      }
+                    ]
+                  },
+                  {
+                    "kind": "INTERFACE",
+                    "name": "org.bukkit.entity.Villager",
+                    "children": [
+                      {"kind": "METHOD", "name": "getProfession()"}
+                    ]
+                  }
+                ]
+              }
+            ]
+            """;
+
+    // org.bukkit is untouched, in org.bukkit.entity:
+    // Entity loses getLocation(), Player keeps its own getLocation()
+    // Player gains teleport(Location), which Entity already had
+    // Player loses kick() and the inner class Spigot, deprecates setHealth(double) and gains getUniqueId()
+    // Villager only gains the inner class Profession
+    private static final String EXPORT_B = """
+            [
+              {
+                "kind": "PACKAGE",
+                "name": "org.bukkit",
+                "children": [
+                  {
+                    "kind": "CLASS",
+                    "name": "org.bukkit.Bukkit",
+                    "children": [
+                      {"kind": "METHOD", "name": "getServer()"}
+                    ]
+                  }
+                ]
+              },
+              {
+                "kind": "PACKAGE",
+                "name": "org.bukkit.entity",
+                "children": [
+                  {
+                    "kind": "INTERFACE",
+                    "name": "org.bukkit.entity.Entity",
+                    "children": [
+                      {"kind": "METHOD", "name": "teleport(Location)"}
+                    ]
+                  },
+                  {
+                    "kind": "INTERFACE",
+                    "name": "org.bukkit.entity.Player",
+                    "children": [
+                      {"kind": "METHOD", "name": "getLocation()"},
+                      {"kind": "METHOD", "name": "getName()"},
+                      {"kind": "METHOD", "name": "getUniqueId()"},
+                      {"kind": "METHOD", "name": "setHealth(double)", "apiStatus": "DEPRECATED"},
+                      {"kind": "METHOD", "name": "teleport(Location)"}
+                    ]
+                  },
+                  {
+                    "kind": "INTERFACE",
+                    "name": "org.bukkit.entity.Villager",
+                    "children": [
+                      {"kind": "METHOD", "name": "getProfession()"},
+                      {
+                        "kind": "ENUM",
+                        "name": "org.bukkit.entity.Villager.Profession",
+                        "children": [
+                          {"kind": "ENUM_CONSTANT", "name": "FARMER"}
+                        ]
+                      }
+                    ]
+                  }
+                ]
+              }
+            ]
+            """;
+
+    @TempDir
+    Path dir;
+
+    private final VersionInfo versionA = new VersionInfo("1.0", 0, "STABLE");
+    private final VersionInfo versionB = new VersionInfo("1.1", 0, "STABLE");
+    private ApiDiff diff;
+
+    @BeforeEach
+    public void computeDiff() throws IOException {
+        Path raw = Files.createDirectories(dir.resolve("raw"));
+        Files.writeString(raw.resolve("paper-api-1.0.json"), EXPORT_A);
+        Files.writeString(raw.resolve("paper-api-1.1.json"), EXPORT_B);
+        diff = new ApiDiffer(raw, dir.resolve("exports")).compute(versionA, versionB);
+    }
+
+    private static Map<String, List<String>> names(Map<String, List<ApiDiffer.Member>> members) {
+        Map<String, List<String>> names = new TreeMap<>();
+        members.forEach((className, list) -> names.put(className, list.stream().map(ApiDiffer.Member::name).toList()));
+        return names;
+    }
+
+    @Test
+    public void skipsUnchangedPackages() {
+        assertEquals(List.of(), diff.packagesAdded());
+        assertEquals(List.of(), diff.packagesRemoved());
+        assertEquals(List.of("org.bukkit.entity"), diff.packagesChanged().stream().map(ApiDiffer.Package::name).toList());
+    }
+
+    @Test
+    public void findsAddedRemovedAndChangedMembers() {
+        assertEquals(List.of("org.bukkit.entity.Entity", "org.bukkit.entity.Player"),
+                diff.classesChanged().stream().map(ApiDiffer.Class::name).toList());
+        assertEquals(List.of("getUniqueId()", "teleport(Location)"), names(diff.membersAdded()).get("org.bukkit.entity.Player"));
+        assertEquals(List.of("kick()"), names(diff.membersRemoved()).get("org.bukkit.entity.Player"));
+        assertEquals(Map.of("org.bukkit.entity.Player", List.of("setHealth(double)")), names(diff.membersChanged()));
+        assertEquals("DEPRECATED", diff.membersChanged().get("org.bukkit.entity.Player").getFirst().apiStatus());
+    }
+
+    @Test
+    public void keepsOverloadsInDifferentClassesApart() {
+        // getLocation() and teleport(Location) exist in both classes, only the class they moved in or out of is listed
+        assertEquals(List.of("getLocation()"), names(diff.membersRemoved()).get("org.bukkit.entity.Entity"));
+        assertFalse(diff.membersAdded().containsKey("org.bukkit.entity.Entity"));
+        assertFalse(names(diff.membersRemoved()).get("org.bukkit.entity.Player").contains("getLocation()"));
+    }
+
+    @Test
+    public void findsAddedAndRemovedInnerClasses() {
+        assertEquals(List.of("org.bukkit.entity.Villager.Profession"), diff.classesAdded().stream().map(ApiDiffer.Class::name).toList());
+        assertEquals(List.of("org.bukkit.entity.Player.Spigot"), diff.classesRemoved().stream().map(ApiDiffer.Class::name).toList());
+        // the outer class of an inner class that was added is not changed itself
+        assertFalse(diff.classesChanged().stream().anyMatch(c -> c.name().equals("org.bukkit.entity.Villager")));
+
+        Map<String, List<String>> added = new LinkedHashMap<>(names(diff.membersAdded()));
+        added.remove("org.bukkit.entity.Player");
+        assertEquals(Map.of("org.bukkit.entity.Villager.Profession", List.of("FARMER")), added);
+        assertEquals(List.of("sendMessage(String)"), names(diff.membersRemoved()).get("org.bukkit.entity.Player.Spigot"));
+    }
+
+    @Test
+    public void findsNothingBetweenEqualExports() {
+        ApiDiff same = new ApiDiffer(dir.resolve("raw"), dir.resolve("exports")).compute(versionA, versionA);
+        assertEquals(List.of(), same.packagesChanged());
+        assertEquals(List.of(), same.classesChanged());
+        assertEquals(Map.of(), same.membersAdded());
+        assertEquals(Map.of(), same.membersRemoved());
+        assertEquals(Map.of(), same.membersChanged());
+    }
+}
@@ -0,0 +1,102 @@
+package dev.minidigger.apidiff;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ApiExportCodecTest {
+
+    private static final String EXPORT = """
+            [
+              {
+                "kind": "PACKAGE",
+                "name": "org.bukkit",
+                "link": "https://jd.papermc.io/paper/1.0/org/bukkit/package-summary.html",
+                "children": [
+                  {
+                    "kind": "CLASS",
+                    "name": "org.bukkit.Bukkit",
+                    "link": "https://jd.papermc.io/paper/1.0/org/bukkit/Bukkit.html",
+                    "children": [
+                      {
+                        "kind": "METHOD",
+                        "name": "getServer()",
+                        "link": "https://jd.papermc.io/paper/1.0/org/bukkit/Bukkit.html#getServer()"
+                      }
+                    ]
+                  }
+                ]
+              }
+            ]
+            """;
+
+    @TempDir
+    Path dir;
+
+    private final VersionInfo version = new VersionInfo("1.0", 0, "STABLE");
+    private Path json;
+    private Path binary;
+
+    @BeforeEach
+    public void writeExport() throws IOException {
+        json = Files.createDirectories(dir.resolve("raw")).resolve("paper-api-1.0.json");
+        Files.writeString(json, EXPORT);
+        binary = dir.resolve("exports/paper-api-1.0.bin");
+    }
+
+    private ApiDiffer apiDiffer() {
+        return new ApiDiffer(dir.resolve("raw"), dir.resolve("exports"));
+    }
+
+    private void assertExport(ApiDiffer.ApiExport export) {
+        assertEquals(List.of("org.bukkit"), List.copyOf(export.packages().keySet()));
+        assertEquals(List.of("org.bukkit.Bukkit"), List.copyOf(export.classes().keySet()));
+        assertEquals("getServer()", export.classes().get("org.bukkit.Bukkit").members().getFirst().name());
+    }
+
+    /**
+     * Writes {@code bytes} as the binary export, newer than the json so it counts as up to date.
+     */
+    private void writeBinary(byte[] bytes) throws IOException {
+        Files.createDirectories(binary.getParent());
+        Files.write(binary, bytes);
+        Files.setLastModifiedTime(binary, FileTime.fromMillis(Files.getLastModifiedTime(json).toMillis() + 1000));
+    }
+
+    @Test
+    public void roundTrips() throws IOException {
+        assertExport(apiDiffer().load(version));
+        assertTrue(Files.isRegularFile(binary));
+        assertExport(ApiExportCodec.read(version, binary, new SymbolTable()));
+    }
+
+    @Test
+    public void fallsBackToJsonForOldFormatVersion() throws IOException {
+        // magic followed by format version 1 and whatever that version had after it
+        writeBinary(ByteBuffer.allocate(16).putInt(0x41504944).put((byte) 1).array());
+
+        assertExport(apiDiffer().load(version));
+        // the binary was rewritten in the current format
+        assertExport(ApiExportCodec.read(version, binary, new SymbolTable()));
+    }
+
+    @Test
+    public void fallsBackToJsonForTruncatedBinary() throws IOException {
+        apiDiffer().load(version);
+        byte[] bytes = Files.readAllBytes(binary);
+        writeBinary(Arrays.copyOf(bytes, bytes.length / 2));
+
+        assertExport(apiDiffer().load(version));
+        assertEquals(bytes.length, Files.size(binary));
+    }
+}
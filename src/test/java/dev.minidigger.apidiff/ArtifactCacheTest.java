@@ -0,0 +1,174 @@
+package dev.minidigger.apidiff;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ArtifactCacheTest {
+
+    @TempDir
+    Path dir;
+
+    private HttpServer server;
+    private String url;
+    // what the stand-in serves, the tests change these between fetches
+    private volatile String body = "version one";
+    private volatile String etag = "\"1\"";
+    private volatile String lastModified = "Wed, 01 Jan 2025 00:00:00 GMT";
+    private final AtomicInteger failuresLeft = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final List<String> conditionalHeaders = new ArrayList<>();
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/missing.jar", exchange -> {
+            requests.incrementAndGet();
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.createContext("/artifact.jar", exchange -> {
+            requests.incrementAndGet();
+            String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+            String ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+            synchronized (conditionalHeaders) {
+                conditionalHeaders.add(ifNoneMatch + " " + ifModifiedSince);
+            }
+            if (failuresLeft.getAndDecrement() > 0) {
+                exchange.sendResponseHeaders(503, -1);
+                exchange.close();
+                return;
+            }
+            boolean notModified = etag != null ? etag.equals(ifNoneMatch) : lastModified.equals(ifModifiedSince);
+            if (notModified) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            if (etag != null) {
+                exchange.getResponseHeaders().set("ETag", etag);
+            }
+            exchange.getResponseHeaders().set("Last-Modified", lastModified);
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+        url = "http://localhost:" + server.getAddress().getPort() + "/artifact.jar";
+    }
+
+    @AfterEach
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    private ArtifactCache cache() {
+        // retries shouldn't slow the tests down
+        return new ArtifactCache(dir, HttpClient.newHttpClient(), 2, 1);
+    }
+
+    @Test
+    public void revalidatesWithEtag() throws Exception {
+        ArtifactCache.Artifact first = cache().fetch(url);
+        assertTrue(first.changed());
+        assertEquals("version one", Files.readString(first.file()));
+        assertEquals(first.downloaded(), Files.size(first.file()));
+
+        // a new instance only has the disk to go on
+        ArtifactCache.Artifact second = cache().fetch(url);
+        assertFalse(second.changed());
+        assertEquals(0, second.downloaded());
+        assertEquals(first.file(), second.file());
+        assertEquals("version one", Files.readString(second.file()));
+        assertEquals("\"1\" " + lastModified, conditionalHeaders.get(1));
+    }
+
+    @Test
+    public void revalidatesWithLastModified() throws Exception {
+        etag = null;
+        assertTrue(cache().fetch(url).changed());
+        ArtifactCache.Artifact second = cache().fetch(url);
+        assertFalse(second.changed());
+        assertEquals("null " + lastModified, conditionalHeaders.get(1));
+
+        lastModified = "Thu, 02 Jan 2025 00:00:00 GMT";
+        body = "version two";
+        ArtifactCache.Artifact third = cache().fetch(url);
+        assertTrue(third.changed());
+        assertEquals("version two", Files.readString(third.file()));
+    }
+
+    @Test
+    public void downloadsAgainWhenChanged() throws Exception {
+        ArtifactCache cache = cache();
+        cache.fetch(url);
+        body = "version two";
+        etag = "\"2\"";
+        ArtifactCache.Artifact second = cache.fetch(url);
+        assertTrue(second.changed());
+        assertEquals("version two", Files.readString(second.file()));
+    }
+
+    @Test
+    public void truncatesLeftoverTmpFile() throws Exception {
+        ArtifactCache cache = cache();
+        Path file = cache.fetch(url).file();
+        // an interrupted download of something longer
+        Files.writeString(file.resolveSibling(file.getFileName() + ".tmp"), "x".repeat(1000));
+
+        body = "short";
+        etag = "\"2\"";
+        ArtifactCache.Artifact second = cache.fetch(url);
+        assertEquals("short", Files.readString(second.file()));
+        assertEquals(5, second.downloaded());
+    }
+
+    @Test
+    public void retriesServerErrors() throws Exception {
+        failuresLeft.set(2);
+        ArtifactCache.Artifact artifact = cache().fetch(url);
+        assertTrue(artifact.changed());
+        assertEquals("version one", Files.readString(artifact.file()));
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    public void givesUpAfterMaxAttempts() throws Exception {
+        failuresLeft.set(Integer.MAX_VALUE);
+        try {
+            cache().fetch(url);
+            fail("expected the fetch to fail");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("503"), e.getMessage());
+        }
+        assertEquals(4, requests.get());
+    }
+
+    @Test
+    public void doesNotRetryClientErrors() throws Exception {
+        try {
+            cache().fetch(url.replace("artifact.jar", "missing.jar"));
+            fail("expected the fetch to fail");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("404"), e.getMessage());
+        }
+        assertEquals(1, requests.get());
+    }
+}
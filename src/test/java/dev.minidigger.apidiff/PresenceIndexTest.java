@@ -0,0 +1,155 @@
+package dev.minidigger.apidiff;
+
+import dev.minidigger.apidiff.ApiDiffer.ApiDiff;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PresenceIndexTest {
+
+    private static final String PACKAGE_BUKKIT = """
+            {"kind": "PACKAGE", "name": "org.bukkit", "children": [
+              {"kind": "CLASS", "name": "org.bukkit.Bukkit", "children": [{"kind": "METHOD", "name": "getServer()"}]}
+            ]}
+            """;
+
+    // members added, removed and moved between classes, a class added
+    private static final String EXPORT_1_0 = """
+            [%s, {"kind": "PACKAGE", "name": "org.bukkit.entity", "children": [
+              {"kind": "INTERFACE", "name": "org.bukkit.entity.Entity", "children": [{"kind": "METHOD", "name": "getLocation()"}]},
+              {"kind": "INTERFACE", "name": "org.bukkit.entity.Player", "children": [
+                {"kind": "METHOD", "name": "getName()"},
+                {"kind": "METHOD", "name": "kick()"},
+                {"kind": "CLASS", "name": "org.bukkit.entity.Player.Spigot", "children": [{"kind": "METHOD", "name": "sendMessage(String)"}]}
+              ]}
+            ]}]
+            """.formatted(PACKAGE_BUKKIT);
+    private static final String EXPORT_1_1 = """
+            [%s, {"kind": "PACKAGE", "name": "org.bukkit.entity", "children": [
+              {"kind": "INTERFACE", "name": "org.bukkit.entity.Entity", "children": [{"kind": "METHOD", "name": "teleport(Location)"}]},
+              {"kind": "INTERFACE", "name": "org.bukkit.entity.Player", "children": [
+                {"kind": "METHOD", "name": "getLocation()"},
+                {"kind": "METHOD", "name": "getName()", "apiStatus": "DEPRECATED"},
+                {"kind": "CLASS", "name": "org.bukkit.entity.Player.Spigot", "children": [{"kind": "METHOD", "name": "sendMessage(String)"}]}
+              ]},
+              {"kind": "INTERFACE", "name": "org.bukkit.entity.Villager", "children": [{"kind": "METHOD", "name": "getProfession()"}]}
+            ]}]
+            """.formatted(PACKAGE_BUKKIT);
+    // only the inner class Player.Spigot changes
+    private static final String EXPORT_1_2 = """
+            [%s, {"kind": "PACKAGE", "name": "org.bukkit.entity", "children": [
+              {"kind": "INTERFACE", "name": "org.bukkit.entity.Entity", "children": [{"kind": "METHOD", "name": "teleport(Location)"}]},
+              {"kind": "INTERFACE", "name": "org.bukkit.entity.Player", "children": [
+                {"kind": "METHOD", "name": "getLocation()"},
+                {"kind": "METHOD", "name": "getName()", "apiStatus": "DEPRECATED"},
+                {"kind": "CLASS", "name": "org.bukkit.entity.Player.Spigot", "children": [
+                  {"kind": "METHOD", "name": "respawn()"},
+                  {"kind": "METHOD", "name": "sendMessage(String)"}
+                ]}
+              ]},
+              {"kind": "INTERFACE", "name": "org.bukkit.entity.Villager", "children": [{"kind": "METHOD", "name": "getProfession()"}]}
+            ]}]
+            """.formatted(PACKAGE_BUKKIT);
+    // only the api status of Villager changes
+    private static final String EXPORT_1_3 = """
+            [%s, {"kind": "PACKAGE", "name": "org.bukkit.entity", "children": [
+              {"kind": "INTERFACE", "name": "org.bukkit.entity.Entity", "children": [{"kind": "METHOD", "name": "teleport(Location)"}]},
+              {"kind": "INTERFACE", "name": "org.bukkit.entity.Player", "children": [
+                {"kind": "METHOD", "name": "getLocation()"},
+                {"kind": "METHOD", "name": "getName()", "apiStatus": "DEPRECATED"},
+                {"kind": "CLASS", "name": "org.bukkit.entity.Player.Spigot", "children": [
+                  {"kind": "METHOD", "name": "respawn()"},
+                  {"kind": "METHOD", "name": "sendMessage(String)"}
+                ]}
+              ]},
+              {"kind": "INTERFACE", "name": "org.bukkit.entity.Villager", "apiStatus": "DEPRECATED", "children": [{"kind": "METHOD", "name": "getProfession()"}]}
+            ]}]
+            """.formatted(PACKAGE_BUKKIT);
+
+    @TempDir
+    Path dir;
+
+    private final List<VersionInfo> versions = List.of(
+            new VersionInfo("1.0", 0, "STABLE"),
+            new VersionInfo("1.1", 0, "STABLE"),
+            new VersionInfo("1.2", 0, "STABLE"),
+            new VersionInfo("1.3", 0, "STABLE"));
+    private ApiDiffer apiDiffer;
+    private PresenceIndex index;
+
+    @BeforeEach
+    public void buildIndex() throws IOException {
+        Path raw = Files.createDirectories(dir.resolve("raw"));
+        List<String> exports = List.of(EXPORT_1_0, EXPORT_1_1, EXPORT_1_2, EXPORT_1_3);
+        for (int i = 0; i < versions.size(); i++) {
+            Files.writeString(raw.resolve("paper-api-" + versions.get(i).name() + ".json"), exports.get(i));
+        }
+        apiDiffer = new ApiDiffer(raw, dir.resolve("exports"));
+        index = PresenceIndex.build(versions, apiDiffer);
+    }
+
+    /**
+     * The names in a diff, sorted, since the index and the sharded compute list them in a different order.
+     */
+    private static Map<String, Object> names(ApiDiff diff) {
+        Map<String, Object> names = new LinkedHashMap<>();
+        names.put("packagesAdded", diff.packagesAdded().stream().map(ApiDiffer.Package::name).sorted().toList());
+        names.put("packagesRemoved", diff.packagesRemoved().stream().map(ApiDiffer.Package::name).sorted().toList());
+        names.put("packagesChanged", diff.packagesChanged().stream().map(ApiDiffer.Package::name).sorted().toList());
+        names.put("classesAdded", diff.classesAdded().stream().map(ApiDiffer.Class::name).sorted().toList());
+        names.put("classesRemoved", diff.classesRemoved().stream().map(ApiDiffer.Class::name).sorted().toList());
+        names.put("classesChanged", diff.classesChanged().stream().map(ApiDiffer.Class::name).sorted().toList());
+        names.put("membersAdded", names(diff.membersAdded()));
+        names.put("membersRemoved", names(diff.membersRemoved()));
+        names.put("membersChanged", names(diff.membersChanged()));
+        return names;
+    }
+
+    private static Map<String, List<String>> names(Map<String, List<ApiDiffer.Member>> members) {
+        Map<String, List<String>> names = new TreeMap<>();
+        members.forEach((className, list) -> names.put(className, list.stream().map(ApiDiffer.Member::name).sorted().toList()));
+        return names;
+    }
+
+    @Test
+    public void matchesComputeForAdjacentVersions() {
+        for (int i = 1; i < versions.size(); i++) {
+            VersionInfo a = versions.get(i - 1);
+            VersionInfo b = versions.get(i);
+            assertEquals(names(apiDiffer.compute(a, b)), names(index.apiDiff(a, b)), a.name() + " -> " + b.name());
+        }
+    }
+
+    @Test
+    public void doesNotChangeOuterClassForInnerClassChange() {
+        ApiDiff diff = index.apiDiff(versions.get(1), versions.get(2));
+        assertEquals(List.of("org.bukkit.entity.Player.Spigot"), diff.classesChanged().stream().map(ApiDiffer.Class::name).toList());
+        assertEquals(List.of("org.bukkit.entity"), diff.packagesChanged().stream().map(ApiDiffer.Package::name).toList());
+    }
+
+    @Test
+    public void doesNotChangeClassForApiStatusChange() {
+        ApiDiff diff = index.apiDiff(versions.get(2), versions.get(3));
+        assertEquals(List.of(), diff.classesChanged());
+        assertEquals(Map.of(), diff.membersChanged());
+    }
+
+    @Test
+    public void spansVersionsInBetween() {
+        // getName() changed in 1.1, Player.Spigot in 1.2
+        ApiDiff diff = index.apiDiff(versions.get(0), versions.get(3));
+        assertEquals(List.of("org.bukkit.entity.Entity", "org.bukkit.entity.Player", "org.bukkit.entity.Player.Spigot"),
+                diff.classesChanged().stream().map(ApiDiffer.Class::name).toList());
+        assertEquals(List.of("getName()"), names(diff.membersChanged()).get("org.bukkit.entity.Player"));
+    }
+}